@@ -0,0 +1,86 @@
+/*
+ * Copyright Besu Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+use banderwagon::{Element, Fr, multi_scalar_mul};
+use criterion::{black_box, criterion_group, criterion_main, BenchmarkId, Criterion};
+use ipa_multipoint::crs::CRS;
+use ipa_multipoint_jni::{commit_scalars, derive_key, COMMITTER, PEDERSEN_SEED};
+use once_cell::sync::Lazy;
+use rayon::prelude::*;
+use verkle_trie::committer::Committer;
+
+fn scalars(n: usize) -> Vec<Fr> {
+    (0..n).map(|i| Fr::from((i as u64 + 1) * 0x9e3779b97f4a7c15)).collect()
+}
+
+/// Per-call cost of a commitment before (CRS derived on every call) and after (cached precomputed tables).
+fn bench_commit(c: &mut Criterion) {
+    Lazy::force(&COMMITTER);
+    let mut group = c.benchmark_group("commit");
+    for n in [1usize, 4, 64, 256] {
+        let input = scalars(n);
+        group.bench_with_input(BenchmarkId::new("crs_per_call", n), &input, |b, input| {
+            b.iter(|| {
+                let bases = CRS::new(input.len(), PEDERSEN_SEED);
+                multi_scalar_mul(&bases.G, black_box(input))
+            })
+        });
+        group.bench_with_input(BenchmarkId::new("precomputed", n), &input, |b, input| {
+            b.iter(|| commit_scalars(black_box(input)))
+        });
+    }
+    group.finish();
+}
+
+/// Incremental update of a commitment kept serialized, as updateCommitment does, against one kept as a point.
+/// The difference is the cost of decompressing the commitment, recommitting to 256 scalars being the reference.
+fn bench_update_commitment(c: &mut Criterion) {
+    Lazy::force(&COMMITTER);
+    let input = scalars(256);
+    let point = commit_scalars(&input);
+    let bytes = point.to_bytes();
+    let delta = Fr::from(7u64);
+    let mut group = c.benchmark_group("update_commitment");
+    group.bench_function("serialized", |b| {
+        b.iter(|| {
+            let point = Element::from_bytes(black_box(&bytes)).unwrap();
+            (point + COMMITTER.scalar_mul(delta, 5)).to_bytes()
+        })
+    });
+    group.bench_function("point", |b| {
+        b.iter(|| (black_box(point.clone()) + COMMITTER.scalar_mul(delta, 5)).to_bytes())
+    });
+    group.bench_function("decompress_only", |b| b.iter(|| Element::from_bytes(black_box(&bytes)).unwrap()));
+    group.bench_function("recommit_256", |b| b.iter(|| commit_scalars(black_box(&input))));
+    group.finish();
+}
+
+/// Base keys of many (address, tree index) pairs, one at a time and in parallel as deriveKeys does.
+fn bench_derive_keys(c: &mut Criterion) {
+    Lazy::force(&COMMITTER);
+    let mut group = c.benchmark_group("derive_keys");
+    for n in [1usize, 64, 1024] {
+        let input: Vec<u8> = (0..64 * n).map(|i| (i * 31 % 251) as u8).collect();
+        group.bench_with_input(BenchmarkId::new("sequential", n), &input, |b, input| {
+            b.iter(|| input.chunks(64).map(|pair| derive_key(&pair[0..32], &pair[32..64])).collect::<Vec<_>>())
+        });
+        group.bench_with_input(BenchmarkId::new("parallel", n), &input, |b, input| {
+            b.iter(|| input.par_chunks(64).map(|pair| derive_key(&pair[0..32], &pair[32..64])).collect::<Vec<_>>())
+        });
+    }
+    group.finish();
+}
+
+criterion_group!(benches, bench_commit, bench_update_commitment, bench_derive_keys);
+criterion_main!(benches);
@@ -13,22 +13,41 @@
  * SPDX-License-Identifier: Apache-2.0
  */
 use ark_ff::PrimeField;
-use banderwagon::{Fr, multi_scalar_mul};
+use banderwagon::Fr;
 use ipa_multipoint::crs::CRS;
+use once_cell::sync::Lazy;
+use rayon::prelude::*;
 use verkle_spec::*;
 // use crate::{vergroup_to_field};
 use ark_serialize::CanonicalSerialize;
 use verkle_trie::*;
+use verkle_trie::committer::Committer;
+use verkle_trie::committer::precompute::PrecomputeLagrange;
 
 // use group_to_field;
 
 use jni::JNIEnv;
 use jni::objects::JClass;
-use jni::sys::jbyteArray;
+use jni::sys::{jbyte, jbyteArray, jintArray};
 
 
 // Copied from rust-verkle: https://github.com/crate-crypto/rust-verkle/blob/581200474327f5d12629ac2e1691eff91f944cec/verkle-trie/src/constants.rs#L12
-const PEDERSEN_SEED: &'static [u8] = b"eth_verkle_oct_2021";
+pub const PEDERSEN_SEED: &'static [u8] = b"eth_verkle_oct_2021";
+
+/// Maximum number of scalars a single commitment can take (width of a verkle node).
+pub const VERKLE_NODE_WIDTH: usize = 256;
+
+/// Pedersen bases, derived once per process.
+/// Hash-to-curve over the seed is sequential, so the first n bases are the same as those of CRS::new(n, PEDERSEN_SEED).
+pub static CRS_BASES: Lazy<CRS> = Lazy::new(|| CRS::new(VERKLE_NODE_WIDTH, PEDERSEN_SEED));
+
+/// Fixed-base window tables for every Pedersen basis, built on first use and shared by all commit calls.
+pub static COMMITTER: Lazy<PrecomputeLagrange> = Lazy::new(|| PrecomputeLagrange::precompute(&CRS_BASES.G));
+
+/// Commits to at most VERKLE_NODE_WIDTH scalars using the precomputed tables.
+pub fn commit_scalars(scalars: &[Fr]) -> Element {
+    COMMITTER.commit_lagrange(scalars)
+}
 
 /// Pedersen hash receives an address and a trie index and returns a hash calculated this way:
 /// H(constant || address_low || address_high || trie_index_low || trie_index_high)
@@ -64,6 +83,59 @@ pub extern "system" fn Java_org_hyperledger_besu_nativelib_ipamultipoint_LibIpaM
     output
 }
 
+/// Derive_keys receives (address, tree index) pairs back to back, both 32 bytes big endian, and returns the
+/// concatenation of their 32 byte base keys, as commit would return for the 5 scalars
+/// [constant, address_low, address_high, trie_index_low, trie_index_high] built by TrieKeyAdapter.
+/// Scalars are built here rather than in Java, and the keys of all pairs are computed in parallel with the
+/// precomputed tables of the first 5 Pedersen bases.
+#[no_mangle]
+pub extern "system" fn Java_org_hyperledger_besu_nativelib_ipamultipoint_LibIpaMultipoint_deriveKeys(env: JNIEnv,
+                                                                                                     _class: JClass<'_>,
+                                                                                                     addresses_and_indices: jbyteArray)
+                                                                                                     -> jbyteArray {
+    let inputs = env.convert_byte_array(addresses_and_indices).expect("Cannot convert jbyteArray to rust array");
+    if inputs.len() % 64 != 0 {
+        env.throw_new("java/lang/IllegalArgumentException", "Invalid input length. Should be a multiple of 64-bytes.")
+           .expect("Failed to throw exception");
+        return std::ptr::null_mut(); // Return null pointer to indicate an error
+    }
+
+    let results: Vec<[u8; 32]> = inputs
+        .par_chunks(64)
+        .map(|pair| derive_key(&pair[0..32], &pair[32..64]))
+        .collect();
+
+    return env.byte_array_from_slice(&results.concat()).expect("Couldn't convert to byte array");
+}
+
+/// Base key of an address and a tree index, both 32 bytes big endian.
+/// Each scalar holds 16 little endian bytes followed by 16 zero bytes, read as a big endian field element:
+/// constant = 2 + 256*16, then both halves of the address as they are, then the low and high halves of the index.
+pub fn derive_key(address: &[u8], tree_index: &[u8]) -> [u8; 32] {
+    let mut index_low = [0u8; 16];
+    index_low.copy_from_slice(&tree_index[16..32]);
+    index_low.reverse();
+    let mut index_high = [0u8; 16];
+    index_high.copy_from_slice(&tree_index[0..16]);
+    index_high.reverse();
+
+    let scalars = [
+        padded_scalar(&(2u128 + 256 * 16).to_le_bytes()),
+        padded_scalar(&address[0..16]),
+        padded_scalar(&address[16..32]),
+        padded_scalar(&index_low),
+        padded_scalar(&index_high),
+    ];
+    scalar_to_bytes(group_to_field(&commit_scalars(&scalars)))
+}
+
+// Field element of 16 bytes padded on the right with zeros, read big endian.
+fn padded_scalar(half: &[u8]) -> Fr {
+    let mut bytes = [0u8; 32];
+    bytes[..16].copy_from_slice(half);
+    Fr::from_be_bytes_mod_order(&bytes)
+}
+
 // Helper function to hash an address and an integer taken from rust-verkle/verkle-specs.
 pub(crate) fn hash_addr_int(addr: &[u8; 32], integer: &[u8; 32]) -> H256 {
 
@@ -110,8 +182,7 @@ pub extern "system" fn Java_org_hyperledger_besu_nativelib_ipamultipoint_LibIpaM
     }
     
     // Committing all values at once.
-    let bases = CRS::new(n_scalars, PEDERSEN_SEED);
-    let commit = multi_scalar_mul(&bases.G, &scalars);
+    let commit = commit_scalars(&scalars);
 
     // Serializing via x/y in projective coordinates, to int and to scalars.
     let scalar = group_to_field(&commit);
@@ -152,8 +223,7 @@ pub extern "system" fn Java_org_hyperledger_besu_nativelib_ipamultipoint_LibIpaM
     }
     
     // Committing all values at once.
-    let bases = CRS::new(n_scalars, PEDERSEN_SEED);
-    let commit = multi_scalar_mul(&bases.G, &scalars);
+    let commit = commit_scalars(&scalars);
 
     // Serializing using first affine coordinate
     let commit_bytes = commit.to_bytes();
@@ -162,6 +232,309 @@ pub extern "system" fn Java_org_hyperledger_besu_nativelib_ipamultipoint_LibIpaM
 }
 
 
+/// Update_commitment receives a commitment as returned by commit_root, the index of one scalar and its old and new values.
+/// It returns the updated commitment C + (new - old) * G_index, serialized like commit_root.
+/// Commitments are linear, so this replaces a full multi-scalar multiplication by a single scalar multiplication.
+/// Nodes keep the 32 byte serialized commitment rather than the uncompressed point, so that it is stored as is:
+/// each call decompresses it, at the cost of a square root, which bench_update_commitment measures.
+#[no_mangle]
+pub extern "system" fn Java_org_hyperledger_besu_nativelib_ipamultipoint_LibIpaMultipoint_updateCommitment(env: JNIEnv,
+                                                                                                           _class: JClass<'_>,
+                                                                                                           commitment: jbyteArray,
+                                                                                                           index: jbyte,
+                                                                                                           old_scalar: jbyteArray,
+                                                                                                           new_scalar: jbyteArray)
+                                                                                                           -> jbyteArray {
+    let commitment = env.convert_byte_array(commitment).expect("Cannot convert jbyteArray to rust array");
+    let old_scalar = env.convert_byte_array(old_scalar).expect("Cannot convert jbyteArray to rust array");
+    let new_scalar = env.convert_byte_array(new_scalar).expect("Cannot convert jbyteArray to rust array");
+    if commitment.len() != 32 || old_scalar.len() != 32 || new_scalar.len() != 32 {
+        env.throw_new("java/lang/IllegalArgumentException", "Invalid input length. Should be 32-bytes.")
+           .expect("Failed to throw exception");
+        return std::ptr::null_mut(); // Return null pointer to indicate an error
+    }
+    let point = match Element::from_bytes(&commitment) {
+        Some(point) => point,
+        None => {
+            env.throw_new("java/lang/IllegalArgumentException", "Invalid commitment.")
+               .expect("Failed to throw exception");
+            return std::ptr::null_mut(); // Return null pointer to indicate an error
+        }
+    };
+
+    let delta = Fr::from_be_bytes_mod_order(&new_scalar) - Fr::from_be_bytes_mod_order(&old_scalar);
+    let updated = point + COMMITTER.scalar_mul(delta, index as u8 as usize);
+
+    return env.byte_array_from_slice(&updated.to_bytes()).expect("Couldn't convert to byte array");
+}
+
+
+/// Group_to_field receives a commitment as returned by commit_root and returns the 32 byte scalar map_to_field(commitment).
+/// The result is the same as commit for the scalars the commitment was made to. Like updateCommitment, it
+/// decompresses the serialized commitment first.
+#[no_mangle]
+pub extern "system" fn Java_org_hyperledger_besu_nativelib_ipamultipoint_LibIpaMultipoint_groupToField(env: JNIEnv,
+                                                                                                       _class: JClass<'_>,
+                                                                                                       commitment: jbyteArray)
+                                                                                                       -> jbyteArray {
+    let commitment = env.convert_byte_array(commitment).expect("Cannot convert jbyteArray to rust array");
+    if commitment.len() != 32 {
+        env.throw_new("java/lang/IllegalArgumentException", "Invalid input length. Should be 32-bytes.")
+           .expect("Failed to throw exception");
+        return std::ptr::null_mut(); // Return null pointer to indicate an error
+    }
+    let point = match Element::from_bytes(&commitment) {
+        Some(point) => point,
+        None => {
+            env.throw_new("java/lang/IllegalArgumentException", "Invalid commitment.")
+               .expect("Failed to throw exception");
+            return std::ptr::null_mut(); // Return null pointer to indicate an error
+        }
+    };
+
+    let scalar = group_to_field(&point);
+    let mut scalar_bytes = [0u8; 32];
+    scalar.serialize(&mut scalar_bytes[..]).expect("could not serialise Fr into a 32 byte array");
+    scalar_bytes.reverse();
+
+    return env.byte_array_from_slice(&scalar_bytes).expect("Couldn't convert to byte array");
+}
+
+
+/// Commit_many receives many lists of 32 byte scalars back to back and the start offset of each list.
+/// It returns the concatenation of the 32 byte map_to_field(commitment) of each list, as commit would.
+/// Commitments are computed in parallel.
+#[no_mangle]
+pub extern "system" fn Java_org_hyperledger_besu_nativelib_ipamultipoint_LibIpaMultipoint_commitMany(env: JNIEnv,
+                                                                                                     _class: JClass<'_>,
+                                                                                                     flat_inputs: jbyteArray,
+                                                                                                     offsets: jintArray)
+                                                                                                     -> jbyteArray {
+    let inputs = match parse_batch(&env, flat_inputs, offsets) {
+        Ok(inputs) => inputs,
+        Err(message) => {
+            env.throw_new("java/lang/IllegalArgumentException", message)
+               .expect("Failed to throw exception");
+            return std::ptr::null_mut(); // Return null pointer to indicate an error
+        }
+    };
+
+    let results: Vec<[u8; 32]> = inputs
+        .par_iter()
+        .map(|scalars| scalar_to_bytes(group_to_field(&commit_scalars(scalars))))
+        .collect();
+
+    return env.byte_array_from_slice(&results.concat()).expect("Couldn't convert to byte array");
+}
+
+
+/// Commit_root_many receives many lists of 32 byte scalars back to back and the start offset of each list.
+/// It returns the concatenation of the 32 byte commitment.to_bytes() of each list, as commit_root would.
+/// Commitments are computed in parallel.
+#[no_mangle]
+pub extern "system" fn Java_org_hyperledger_besu_nativelib_ipamultipoint_LibIpaMultipoint_commitRootMany(env: JNIEnv,
+                                                                                                         _class: JClass<'_>,
+                                                                                                         flat_inputs: jbyteArray,
+                                                                                                         offsets: jintArray)
+                                                                                                         -> jbyteArray {
+    let inputs = match parse_batch(&env, flat_inputs, offsets) {
+        Ok(inputs) => inputs,
+        Err(message) => {
+            env.throw_new("java/lang/IllegalArgumentException", message)
+               .expect("Failed to throw exception");
+            return std::ptr::null_mut(); // Return null pointer to indicate an error
+        }
+    };
+
+    let results: Vec<[u8; 32]> = inputs
+        .par_iter()
+        .map(|scalars| commit_scalars(scalars).to_bytes())
+        .collect();
+
+    return env.byte_array_from_slice(&results.concat()).expect("Couldn't convert to byte array");
+}
+
+
+/// Group_to_field_many receives many commitments as returned by commit_root, back to back.
+/// It returns the concatenation of their 32 byte map_to_field(commitment), as groupToField would.
+#[no_mangle]
+pub extern "system" fn Java_org_hyperledger_besu_nativelib_ipamultipoint_LibIpaMultipoint_groupToFieldMany(env: JNIEnv,
+                                                                                                           _class: JClass<'_>,
+                                                                                                           commitments: jbyteArray)
+                                                                                                           -> jbyteArray {
+    let commitments = env.convert_byte_array(commitments).expect("Cannot convert jbyteArray to rust array");
+    if commitments.len() % 32 != 0 {
+        env.throw_new("java/lang/IllegalArgumentException", "Invalid input length. Should be a multiple of 32-bytes.")
+           .expect("Failed to throw exception");
+        return std::ptr::null_mut(); // Return null pointer to indicate an error
+    }
+    let points: Option<Vec<Element>> = commitments.chunks(32).map(Element::from_bytes).collect();
+    let points = match points {
+        Some(points) => points,
+        None => {
+            env.throw_new("java/lang/IllegalArgumentException", "Invalid commitment.")
+               .expect("Failed to throw exception");
+            return std::ptr::null_mut(); // Return null pointer to indicate an error
+        }
+    };
+
+    let results: Vec<[u8; 32]> = points
+        .par_iter()
+        .map(|point| scalar_to_bytes(group_to_field(point)))
+        .collect();
+
+    return env.byte_array_from_slice(&results.concat()).expect("Couldn't convert to byte array");
+}
+
+
+/// Commit_sparse receives a list of indices (one byte each) and the 32 byte scalars at those indices.
+/// Every other scalar is zero. It returns the same 32 byte map_to_field(commitment) as commit on the dense list,
+/// but only pays for the non-zero scalars.
+#[no_mangle]
+pub extern "system" fn Java_org_hyperledger_besu_nativelib_ipamultipoint_LibIpaMultipoint_commitSparse(env: JNIEnv,
+                                                                                                       _class: JClass<'_>,
+                                                                                                       indices: jbyteArray,
+                                                                                                       scalars: jbyteArray)
+                                                                                                       -> jbyteArray {
+    let indices = env.convert_byte_array(indices).expect("Cannot convert jbyteArray to rust array");
+    let scalars = env.convert_byte_array(scalars).expect("Cannot convert jbyteArray to rust array");
+    if scalars.len() != 32 * indices.len() {
+        env.throw_new("java/lang/IllegalArgumentException", "Invalid input length. Should be 32-bytes per index.")
+           .expect("Failed to throw exception");
+        return std::ptr::null_mut(); // Return null pointer to indicate an error
+    }
+
+    let commitment = commit_sparse(&indices, &scalars);
+    return env.byte_array_from_slice(&scalar_to_bytes(group_to_field(&commitment))).expect("Couldn't convert to byte array");
+}
+
+
+/// Commit_sparse_many receives many sparse inputs back to back, as indices and scalars,
+/// and the start of each input counted in elements.
+/// It returns the concatenation of the 32 byte map_to_field(commitment) of each input, as commit_sparse would.
+#[no_mangle]
+pub extern "system" fn Java_org_hyperledger_besu_nativelib_ipamultipoint_LibIpaMultipoint_commitSparseMany(env: JNIEnv,
+                                                                                                           _class: JClass<'_>,
+                                                                                                           flat_indices: jbyteArray,
+                                                                                                           flat_scalars: jbyteArray,
+                                                                                                           offsets: jintArray)
+                                                                                                           -> jbyteArray {
+    let inputs = match parse_sparse_batch(&env, flat_indices, flat_scalars, offsets) {
+        Ok(inputs) => inputs,
+        Err(message) => {
+            env.throw_new("java/lang/IllegalArgumentException", message)
+               .expect("Failed to throw exception");
+            return std::ptr::null_mut(); // Return null pointer to indicate an error
+        }
+    };
+
+    let results: Vec<[u8; 32]> = inputs
+        .par_iter()
+        .map(|(indices, scalars)| scalar_to_bytes(group_to_field(&commit_sparse(indices, scalars))))
+        .collect();
+
+    return env.byte_array_from_slice(&results.concat()).expect("Couldn't convert to byte array");
+}
+
+
+/// Same as commit_sparse_many, but returns the 32 byte commitment.to_bytes() of each input, as commit_root would.
+#[no_mangle]
+pub extern "system" fn Java_org_hyperledger_besu_nativelib_ipamultipoint_LibIpaMultipoint_commitRootSparseMany(env: JNIEnv,
+                                                                                                               _class: JClass<'_>,
+                                                                                                               flat_indices: jbyteArray,
+                                                                                                               flat_scalars: jbyteArray,
+                                                                                                               offsets: jintArray)
+                                                                                                               -> jbyteArray {
+    let inputs = match parse_sparse_batch(&env, flat_indices, flat_scalars, offsets) {
+        Ok(inputs) => inputs,
+        Err(message) => {
+            env.throw_new("java/lang/IllegalArgumentException", message)
+               .expect("Failed to throw exception");
+            return std::ptr::null_mut(); // Return null pointer to indicate an error
+        }
+    };
+
+    let results: Vec<[u8; 32]> = inputs
+        .par_iter()
+        .map(|(indices, scalars)| commit_sparse(indices, scalars).to_bytes())
+        .collect();
+
+    return env.byte_array_from_slice(&results.concat()).expect("Couldn't convert to byte array");
+}
+
+
+/// Commits to scalars placed at the given indices, every other scalar being zero.
+pub fn commit_sparse(indices: &[u8], scalars: &[u8]) -> Element {
+    let val_indices = indices
+        .iter()
+        .zip(scalars.chunks(32))
+        .map(|(index, scalar)| (Fr::from_be_bytes_mod_order(scalar), *index as usize))
+        .collect();
+    COMMITTER.commit_sparse(val_indices)
+}
+
+
+/// Splits a sparse batch into (indices, scalars) pairs: offsets holds the start of each input, counted in elements.
+fn parse_sparse_batch(env: &JNIEnv, flat_indices: jbyteArray, flat_scalars: jbyteArray, offsets: jintArray)
+                      -> Result<Vec<(Vec<u8>, Vec<u8>)>, &'static str> {
+    let indices = env.convert_byte_array(flat_indices).expect("Cannot convert jbyteArray to rust array");
+    let scalars = env.convert_byte_array(flat_scalars).expect("Cannot convert jbyteArray to rust array");
+    if scalars.len() != 32 * indices.len() {
+        return Err("Invalid input length. Should be 32-bytes per index.");
+    }
+    let n_inputs = env.get_array_length(offsets).expect("Cannot get jintArray length") as usize;
+    let mut starts = vec![0; n_inputs];
+    env.get_int_array_region(offsets, 0, &mut starts).expect("Cannot convert jintArray to rust array");
+
+    let mut inputs = Vec::with_capacity(n_inputs);
+    for k in 0..n_inputs {
+        let start = starts[k] as usize;
+        let end = if k + 1 < n_inputs { starts[k + 1] as usize } else { indices.len() };
+        if starts[k] < 0 || start > end || end > indices.len() {
+            return Err("Invalid offsets. Should be increasing and within the input.");
+        }
+        inputs.push((indices[start..end].to_vec(), scalars[32 * start..32 * end].to_vec()));
+    }
+    Ok(inputs)
+}
+
+
+/// Splits a batch into lists of scalars: flat_inputs holds the lists back to back, offsets the start of each list.
+fn parse_batch(env: &JNIEnv, flat_inputs: jbyteArray, offsets: jintArray) -> Result<Vec<Vec<Fr>>, &'static str> {
+    let inp = env.convert_byte_array(flat_inputs).expect("Cannot convert jbyteArray to rust array");
+    let n_inputs = env.get_array_length(offsets).expect("Cannot get jintArray length") as usize;
+    let mut starts = vec![0; n_inputs];
+    env.get_int_array_region(offsets, 0, &mut starts).expect("Cannot convert jintArray to rust array");
+
+    let mut inputs = Vec::with_capacity(n_inputs);
+    for k in 0..n_inputs {
+        let start = starts[k] as usize;
+        let end = if k + 1 < n_inputs { starts[k + 1] as usize } else { inp.len() };
+        if starts[k] < 0 || start > end || end > inp.len() {
+            return Err("Invalid offsets. Should be increasing and within the input.");
+        }
+        if (end - start) % 32 != 0 {
+            return Err("Invalid input length. Should be a multiple of 32-bytes.");
+        }
+        if (end - start) / 32 > VERKLE_NODE_WIDTH {
+            return Err("Invalid input length. Should be at most 256 elements of 32-bytes.");
+        }
+        // Each 32-be-bytes are interpreted as field elements.
+        inputs.push(inp[start..end].chunks(32).map(Fr::from_be_bytes_mod_order).collect());
+    }
+    Ok(inputs)
+}
+
+
+/// Serializes a scalar as 32 big endian bytes.
+fn scalar_to_bytes(scalar: Fr) -> [u8; 32] {
+    let mut scalar_bytes = [0u8; 32];
+    scalar.serialize(&mut scalar_bytes[..]).expect("could not serialise Fr into a 32 byte array");
+    scalar_bytes.reverse();
+    scalar_bytes
+}
+
+
 // Note: This is a 2 to 1 map, but the two preimages are identified to be the same
 // TODO: Create a document showing that this poses no problems
 pub(crate)fn group_to_field(point: &Element) -> Fr {
@@ -0,0 +1,87 @@
+/*
+ * Copyright Hyperledger Besu Contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.besu.ethereum.trie.verkle;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+
+/**
+ * Root hash and commit of a trie of a given size, after a number of updates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RootHashBenchmark {
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"RANDOM", "ACCOUNT"})
+    public Workload workload;
+
+    @Param({"1", "100", "10000"})
+    public int updates;
+
+    private SimpleVerkleTrie<Bytes32, Bytes32> trie;
+    private Bytes32[] keys;
+    private Random random;
+    private Map<Bytes, Bytes> storage;
+    private NodeUpdater nodeUpdater;
+
+    @Setup
+    public void setUp() {
+        random = new Random(42);
+        keys = workload.keys(size, random);
+        trie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        for (Bytes32 key : keys) {
+            trie.put(key, key);
+        }
+        storage = new HashMap<>();
+        nodeUpdater = (location, hash, value) -> storage.put(location, value);
+        trie.commit(nodeUpdater);
+    }
+
+    private void update() {
+        for (int i = 0; i < updates; i++) {
+            trie.put(keys[random.nextInt(keys.length)], Workload.randomBytes32(random));
+        }
+    }
+
+    @Benchmark
+    public Bytes32 hashAfterUpdates() {
+        update();
+        return trie.getRootHash();
+    }
+
+    @Benchmark
+    public Map<Bytes, Bytes> commitAfterUpdates() {
+        update();
+        trie.commit(nodeUpdater);
+        return storage;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright Hyperledger Besu Contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.besu.ethereum.trie.verkle;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.units.bigints.UInt256;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+
+/**
+ * Key derivation for accounts and storage slots.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TrieKeyAdapterBenchmark {
+    private TrieKeyAdapter adapter;
+    private Bytes32[] addresses;
+    private Random random;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        adapter = new TrieKeyAdapter(new IPAHasher());
+        random = new Random(42);
+        addresses = Workload.RANDOM.keys(1024, random);
+    }
+
+    private Bytes32 nextAddress() {
+        next = (next + 1) % addresses.length;
+        return addresses[next];
+    }
+
+    @Benchmark
+    public Bytes32 balanceKey() {
+        return adapter.balanceKey(nextAddress());
+    }
+
+    @Benchmark
+    public Bytes32 storageKey() {
+        return adapter.storageKey(nextAddress(), UInt256.valueOf(random.nextInt(1 << 20)));
+    }
+
+    @Benchmark
+    public Bytes32 codeChunkKey() {
+        return adapter.codeChunkKey(nextAddress(), UInt256.valueOf(random.nextInt(768)));
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright Hyperledger Besu Contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.besu.ethereum.trie.verkle;
+
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.tuweni.bytes.Bytes32;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+
+/**
+ * Point operations on a hashed trie of a given size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TrieOperationsBenchmark {
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"RANDOM", "ACCOUNT"})
+    public Workload workload;
+
+    private SimpleVerkleTrie<Bytes32, Bytes32> trie;
+    private Bytes32[] keys;
+    private Random random;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        random = new Random(42);
+        keys = workload.keys(size, random);
+        trie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        for (Bytes32 key : keys) {
+            trie.put(key, key);
+        }
+        trie.getRootHash();
+    }
+
+    private Bytes32 nextKey() {
+        next = (next + 1) % keys.length;
+        return keys[next];
+    }
+
+    @Benchmark
+    public Optional<Bytes32> get() {
+        return trie.get(nextKey());
+    }
+
+    @Benchmark
+    public void putExisting() {
+        Bytes32 key = nextKey();
+        trie.put(key, Bytes32.ZERO);
+    }
+
+    // Inserts fresh keys, so the trie grows slowly during the run
+    @Benchmark
+    public void putNew() {
+        trie.put(Workload.randomBytes32(random), Bytes32.ZERO);
+    }
+
+    // Puts the key back after removing it, to keep the trie size constant
+    @Benchmark
+    public void removeAndPut() {
+        Bytes32 key = nextKey();
+        trie.remove(key);
+        trie.put(key, key);
+    }
+}
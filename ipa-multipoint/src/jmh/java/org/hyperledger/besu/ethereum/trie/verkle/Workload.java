@@ -0,0 +1,68 @@
+/*
+ * Copyright Hyperledger Besu Contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.besu.ethereum.trie.verkle;
+
+import java.util.Random;
+
+import org.apache.tuweni.bytes.Bytes32;
+
+
+/**
+ * Shapes of the keys inserted by the benchmarks.
+ */
+public enum Workload {
+    // Keys spread uniformly, one value per stem
+    RANDOM {
+        @Override
+        Bytes32[] keys(int count, Random random) {
+            Bytes32[] keys = new Bytes32[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = randomBytes32(random);
+            }
+            return keys;
+        }
+    },
+    // Account headers: version, balance, nonce, code hash and code size share a stem
+    ACCOUNT {
+        @Override
+        Bytes32[] keys(int count, Random random) {
+            TrieKeyAdapter adapter = new TrieKeyAdapter(new IPAHasher());
+            Bytes32[] keys = new Bytes32[count];
+            int i = 0;
+            while (i < count) {
+                Bytes32 address = randomBytes32(random);
+                Bytes32[] header = new Bytes32[] {
+                    adapter.versionKey(address),
+                    adapter.balanceKey(address),
+                    adapter.nonceKey(address),
+                    adapter.codeKeccakKey(address),
+                    adapter.codeSizeKey(address)
+                };
+                for (int j = 0; j < header.length && i < count; j++) {
+                    keys[i++] = header[j];
+                }
+            }
+            return keys;
+        }
+    };
+
+    abstract Bytes32[] keys(int count, Random random);
+
+    static Bytes32 randomBytes32(Random random) {
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        return Bytes32.wrap(bytes);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright Hyperledger Besu Contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.besu.nativelib.ipamultipoint;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+
+/**
+ * Native commitments, including the cost of crossing JNI.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CommitBenchmark {
+    @Param({"1", "4", "64", "256"})
+    public int width;
+
+    private byte[] input;
+    private byte[] indices;
+    private byte[] pedersenInput;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        input = new byte[32 * width];
+        random.nextBytes(input);
+        // Keep scalars below the field modulus
+        for (int i = 0; i < width; i++) {
+            input[32 * i] &= 0x0f;
+        }
+        indices = new byte[width];
+        for (int i = 0; i < width; i++) {
+            indices[i] = (byte) (255 - i);
+        }
+        pedersenInput = new byte[64];
+        random.nextBytes(pedersenInput);
+    }
+
+    @Benchmark
+    public byte[] commit() {
+        return LibIpaMultipoint.commit(input);
+    }
+
+    @Benchmark
+    public byte[] commitRoot() {
+        return LibIpaMultipoint.commit_root(input);
+    }
+
+    @Benchmark
+    public byte[] commitSparse() {
+        return LibIpaMultipoint.commitSparse(indices, input);
+    }
+
+    @Benchmark
+    public byte[] pedersenHash() {
+        return LibIpaMultipoint.pedersenHash(pedersenInput);
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright Hyperledger Besu Contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.besu.ethereum.trie.verkle;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+
+
+/**
+ * Runs the loads of a blocking NodeLoader on an executor, so that nodes loaded together overlap their latency.
+ *
+ * The children of a branch stored without a children bitmap, each level of a prefetch, the siblings read by a
+ * rehash from scratch and the nodes of a level of the paths updated by putAll are loaded as one getNodes batch
+ * whose loads then run concurrently. A bounded thread pool caps the loads in flight, while an
+ * executor starting a virtual thread per task, on runtimes that have them, does not tie up a thread per load.
+ *
+ * The wrapped loader must support concurrent reads. Its own getNodes is not used.
+ */
+public class AsyncNodeLoader implements NodeLoader {
+    private final NodeLoader nodeLoader;
+    private final Executor executor;
+
+    /**
+     * @param nodeLoader blocking loader.
+     * @param executor executor running the loads.
+     */
+    public AsyncNodeLoader(final NodeLoader nodeLoader, final Executor executor) {
+        this.nodeLoader = nodeLoader;
+        this.executor = executor;
+    }
+
+    @Override
+    public Optional<Bytes> getNode(final Bytes location, final Bytes32 hash) {
+        return nodeLoader.getNode(location, hash);
+    }
+
+    @Override
+    public CompletableFuture<Optional<Bytes>> getNodeAsync(final Bytes location, final Bytes32 hash) {
+        return CompletableFuture.supplyAsync(() -> nodeLoader.getNode(location, hash), executor);
+    }
+}
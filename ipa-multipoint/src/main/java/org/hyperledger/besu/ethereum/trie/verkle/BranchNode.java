@@ -2,20 +2,25 @@ package org.hyperledger.besu.ethereum.trie.verkle;
 
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
-import org.apache.tuweni.rlp.RLP;
-import org.apache.tuweni.rlp.RLPWriter;
 
 
 public class BranchNode<V> implements Node<V> {
     private final Optional<Bytes> location;  // Location in the tree
     private final Bytes path;  // Extension path
     private final Optional<Bytes32> hash;  // vector commitment of children's commitments
+    private final Optional<Bytes32> commitment;  // commitment to the children's hashes, before extension
+    private final Optional<Bytes32> leftCommitment;  // stem only: commitment to the values at index 0-127
+    private final Optional<Bytes32> rightCommitment;  // stem only: commitment to the values at index 128-255
+    // Children as they were when the commitments were computed, null until a child is replaced
+    private Map<Byte, Node<V>> previousChildren;
     private Optional<Bytes> encodedValue = Optional.empty();
     private List<Node<V>> children;
 
@@ -31,6 +36,9 @@ public class BranchNode<V> implements Node<V> {
         this.hash = Optional.of(hash);
         this.path = path;
         this.children = children;
+        this.commitment = Optional.empty();
+        this.leftCommitment = Optional.empty();
+        this.rightCommitment = Optional.empty();
     }
 
     public BranchNode(
@@ -43,6 +51,41 @@ public class BranchNode<V> implements Node<V> {
         this.hash = hash;
         this.path = path;
         this.children = children;
+        this.commitment = Optional.empty();
+        this.leftCommitment = Optional.empty();
+        this.rightCommitment = Optional.empty();
+    }
+
+    public BranchNode(
+            final Bytes location,
+            final Bytes32 hash,
+            final Optional<Bytes32> commitment,
+            final Optional<Bytes32> leftCommitment,
+            final Optional<Bytes32> rightCommitment,
+            final Bytes path,
+            final List<Node<V>> children) {
+        this(Optional.of(location), Optional.of(hash), commitment, leftCommitment, rightCommitment,
+            path, children, null);
+        assert (children.size() == maxChild());
+    }
+
+    private BranchNode(
+            final Optional<Bytes> location,
+            final Optional<Bytes32> hash,
+            final Optional<Bytes32> commitment,
+            final Optional<Bytes32> leftCommitment,
+            final Optional<Bytes32> rightCommitment,
+            final Bytes path,
+            final List<Node<V>> children,
+            final Map<Byte, Node<V>> previousChildren) {
+        this.location = location;
+        this.hash = hash;
+        this.commitment = commitment;
+        this.leftCommitment = leftCommitment;
+        this.rightCommitment = rightCommitment;
+        this.path = path;
+        this.children = children;
+        this.previousChildren = previousChildren;
     }
 
     public BranchNode(
@@ -54,6 +97,9 @@ public class BranchNode<V> implements Node<V> {
         this.path = path;
         this.children = children;
         hash = Optional.empty();
+        commitment = Optional.empty();
+        leftCommitment = Optional.empty();
+        rightCommitment = Optional.empty();
     }
 
     public BranchNode(final Optional<Bytes> location, final Bytes path) {
@@ -64,6 +110,9 @@ public class BranchNode<V> implements Node<V> {
             children.add(NullNode.instance());
         }
         hash = Optional.of(EMPTY_HASH);
+        commitment = Optional.empty();
+        leftCommitment = Optional.empty();
+        rightCommitment = Optional.empty();
     }
 
     public static int maxChild() {
@@ -85,17 +134,59 @@ public class BranchNode<V> implements Node<V> {
     }
 
     public void replaceChild(final byte index, final Node<V> childNode) {
+        // Keep the first replaced child, so commitments can be updated from it
+        if (previousChildren == null) {
+            previousChildren = new HashMap<>();
+        }
+        previousChildren.putIfAbsent(index, child(index));
         children.set(Byte.toUnsignedInt(index), childNode);
     }
 
+    /**
+     * Children replaced since the commitments were computed, as they were at that time.
+     *
+     * @return previous children by index.
+     */
+    public Map<Byte, Node<V>> getPreviousChildren() {
+        return previousChildren == null ? Collections.emptyMap() : previousChildren;
+    }
+
+    private Map<Byte, Node<V>> copyPreviousChildren() {
+        return previousChildren == null ? null : new HashMap<>(previousChildren);
+    }
+
     public Optional<Bytes32> getHash() {
         return hash;
     }
 
+    public Optional<Bytes32> getCommitment() {
+        return commitment;
+    }
+
+    public Optional<Bytes32> getLeftCommitment() {
+        return leftCommitment;
+    }
+
+    public Optional<Bytes32> getRightCommitment() {
+        return rightCommitment;
+    }
+
     public Node<V> replaceHash(Bytes32 hash) {
         return new BranchNode<V>(location, Optional.of(hash), path, children);
     }
 
+    public Node<V> replaceHash(Bytes32 hash, Bytes32 commitment) {
+        return new BranchNode<V>(
+            location, Optional.of(hash), Optional.of(commitment), Optional.empty(), Optional.empty(),
+            path, children, null);
+    }
+
+    public Node<V> replaceHash(Bytes32 hash, Bytes32 leftCommitment, Bytes32 rightCommitment) {
+        return new BranchNode<V>(
+            location, Optional.of(hash), Optional.empty(), Optional.of(leftCommitment), Optional.of(rightCommitment),
+            path, children, null);
+    }
+
     @Override
     public Optional<Bytes> getLocation() {
         return location;
@@ -107,17 +198,39 @@ public class BranchNode<V> implements Node<V> {
 
     @Override
     public Node<V> replacePath(Bytes path) {
-        BranchNode<V> updatedNode = new BranchNode<V>(location, path, children);
+        // Children are unchanged, so are the commitments to them
+        BranchNode<V> updatedNode = new BranchNode<V>(
+            location, Optional.empty(), commitment, leftCommitment, rightCommitment,
+            path, children, copyPreviousChildren());
         return updatedNode;
     }
 
+    /**
+     * Copy of the node, that can be updated without affecting this one.
+     *
+     * @return node with the same content and its own children list.
+     */
+    public BranchNode<V> copy() {
+        BranchNode<V> copy = new BranchNode<V>(location, hash, commitment, leftCommitment, rightCommitment,
+            path, new ArrayList<>(children), copyPreviousChildren());
+        copy.encodedValue = encodedValue;
+        copy.dirty = dirty;
+        return copy;
+    }
+
     @Override
     public Bytes getEncodedValue() {
         if (encodedValue.isPresent()) {
             return encodedValue.get();
         }
-        List<Bytes> values = Arrays.asList((Bytes) getHash().get(), getPath());
-        Bytes result = RLP.encodeList(values, RLPWriter::writeValue);
+        // Commitments are kept so that a stored node can be updated without its children
+        List<Bytes32> commitments = new ArrayList<>(2);
+        commitment.ifPresent(commitments::add);
+        if (leftCommitment.isPresent() && rightCommitment.isPresent()) {
+            commitments.add(leftCommitment.get());
+            commitments.add(rightCommitment.get());
+        }
+        Bytes result = NodeEncoding.encodeBranch(getHash().get(), getPath(), childrenBitmap(), commitments);
         this.encodedValue = Optional.of(result);
         return result;
     }
@@ -127,11 +240,33 @@ public class BranchNode<V> implements Node<V> {
         return children;
     }
 
+    /**
+     * Bitmap of the non-null children, bit i (most significant first) being set if child i exists.
+     *
+     * Stored with the node, so that children can be loaded lazily.
+     *
+     * @return 32 bytes bitmap.
+     */
+    public Bytes32 childrenBitmap() {
+        byte[] bitmap = new byte[maxChild() / 8];
+        for (int i = 0; i < maxChild(); i++) {
+            if (children.get(i) != NullNode.instance()) {
+                bitmap[i / 8] |= (byte) (0x80 >>> (i % 8));
+            }
+        }
+        return Bytes32.wrap(bitmap);
+    }
+
     @Override
     public void markDirty() {
         dirty = true;
     }
 
+    @Override
+    public void markClean() {
+        dirty = false;
+    }
+
     @Override
     public boolean isDirty() {
         return dirty;
@@ -0,0 +1,114 @@
+/*
+ * Copyright Hyperledger Besu Contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.besu.ethereum.trie.verkle;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.TreeMap;
+
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+
+
+/**
+ * Splits contract code into chunks, as specified by EIP-6800.
+ *
+ * Each chunk holds 31 bytes of code, the last one padded with zeros, after a leading byte counting the bytes at the
+ * start of the chunk that are PUSHDATA of an instruction in a previous chunk.
+ * Chunks are produced one at a time, in a single pass over the code.
+ */
+public class CodeChunker implements Iterator<Bytes32> {
+    public static final int CHUNK_SIZE = 31;
+    private static final int PUSH1 = 0x60;
+    private static final int PUSH32 = 0x7f;
+
+    private final byte[] code;
+    private int position = 0;
+    private int pushdataLeft = 0;  // PUSHDATA bytes starting at position
+
+    public CodeChunker(final Bytes code) {
+        this.code = code.toArrayUnsafe();
+    }
+
+    /**
+     * @param codeSize size of the code in bytes.
+     * @return number of chunks of the code.
+     */
+    public static int chunkCount(final int codeSize) {
+        return (codeSize + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    }
+
+    /**
+     * @param code contract code.
+     * @return all chunks of the code.
+     */
+    public static List<Bytes32> chunkify(final Bytes code) {
+        final List<Bytes32> chunks = new ArrayList<>(chunkCount(code.size()));
+        new CodeChunker(code).forEachRemaining(chunks::add);
+        return chunks;
+    }
+
+    /**
+     * Puts the chunks of a contract's code in a trie with a single putAll, left to group the chunks by stem.
+     *
+     * @param trie trie to update.
+     * @param adapter key adapter deriving the chunk keys.
+     * @param address address of the contract.
+     * @param code code of the contract.
+     */
+    public static void putCode(
+            final VerkleTrie<Bytes32, Bytes32> trie,
+            final TrieKeyAdapter adapter,
+            final Bytes32 address,
+            final Bytes code) {
+        final List<Bytes32> keys = adapter.codeChunkKeys(address, chunkCount(code.size()));
+        final CodeChunker chunker = new CodeChunker(code);
+        final TreeMap<Bytes32, Optional<Bytes32>> updates = new TreeMap<>();
+        for (Bytes32 key : keys) {
+            updates.put(key, Optional.of(chunker.next()));
+        }
+        trie.putAll(updates);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return position < code.length;
+    }
+
+    @Override
+    public Bytes32 next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final byte[] chunk = new byte[Bytes32.SIZE];
+        chunk[0] = (byte) Math.min(pushdataLeft, CHUNK_SIZE);
+        final int end = Math.min(position + CHUNK_SIZE, code.length);
+        System.arraycopy(code, position, chunk, 1, end - position);
+        for (; position < end; position++) {
+            if (pushdataLeft > 0) {
+                pushdataLeft--;
+            } else {
+                final int opcode = code[position] & 0xff;
+                if (opcode >= PUSH1 && opcode <= PUSH32) {
+                    pushdataLeft = opcode - PUSH1 + 1;
+                }
+            }
+        }
+        return Bytes32.wrap(chunk);
+    }
+}
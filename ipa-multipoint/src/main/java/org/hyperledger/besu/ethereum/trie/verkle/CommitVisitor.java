@@ -29,12 +29,19 @@ public class CommitVisitor<V> implements PathNodeVisitor<V> {
         if (!branchNode.isDirty()) {
             return branchNode;
         }
+        // Children are located after the extension, so moving a node does not move its descendants
+        final byte[] childLocation = KeyPath.childPrefix(location, branchNode.getPath());
         for (int i = 0; i < BranchNode.maxChild(); ++i) {
-            Bytes index = Bytes.of(i);
             final Node<V> child = branchNode.child((byte) i);
-            child.accept(this, Bytes.concatenate(location, index));
+            if (!child.isDirty()) {
+                // Already persisted, possibly not even loaded
+                continue;
+            }
+            childLocation[childLocation.length - 1] = (byte) i;
+            child.accept(this, Bytes.wrap(childLocation.clone()));
         }
-        nodeUpdater.store(location, null, branchNode.getEncodedValue());
+        nodeUpdater.store(location, branchNode.getHash().orElse(null), branchNode.getEncodedValue());
+        branchNode.markClean();
         return branchNode;
     }
 
@@ -43,10 +50,22 @@ public class CommitVisitor<V> implements PathNodeVisitor<V> {
         if (!leafNode.isDirty()) {
             return leafNode;
         }
-        nodeUpdater.store(location, null, leafNode.getEncodedValue());
+        nodeUpdater.store(location, leafNode.getHash().orElse(null), leafNode.getEncodedValue());
+        leafNode.markClean();
         return leafNode;
     }
 
+    @Override
+    public Node<V> visit(final StemNode<V> stemNode, final Bytes location) {
+        if (!stemNode.isDirty()) {
+            return stemNode;
+        }
+        // Values are stored with the stem
+        nodeUpdater.store(location, stemNode.getHash().orElse(null), stemNode.getEncodedValue());
+        stemNode.markClean();
+        return stemNode;
+    }
+
     @Override
     public Node<V> visit(final NullNode<V> nullNode, final Bytes location) {
         return nullNode;
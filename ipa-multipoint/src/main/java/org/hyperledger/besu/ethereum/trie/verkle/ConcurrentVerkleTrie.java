@@ -0,0 +1,126 @@
+/*
+ * Copyright Hyperledger Besu Contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.besu.ethereum.trie.verkle;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+
+
+/**
+ * Verkle trie updated by a single thread while any number of threads read it.
+ *
+ * VerkleTrie methods are for the writing thread, and see its updates right away.
+ * Each time the writer hashes or commits the trie, the new version is published as an immutable View.
+ * Readers get the last published View and read from it without locks, while the writer updates copies of the
+ * nodes it shares with published versions.
+ *
+ * Reading stored nodes that are not loaded yet requires a NodeLoader supporting concurrent reads.
+ */
+public class ConcurrentVerkleTrie<K extends Bytes, V extends Bytes> implements VerkleTrie<K, V> {
+    private final SimpleVerkleTrie<K, V> trie;
+    private final AtomicReference<View<K, V>> published = new AtomicReference<>();
+
+    public ConcurrentVerkleTrie() {
+        this(new SimpleVerkleTrie<K, V>());
+    }
+
+    public ConcurrentVerkleTrie(final Node<V> root) {
+        this(new SimpleVerkleTrie<K, V>(root));
+    }
+
+    private ConcurrentVerkleTrie(final SimpleVerkleTrie<K, V> trie) {
+        this.trie = trie;
+        publish(trie.getRootHash());
+    }
+
+    public void setHashVisitor(final HashVisitor<V> hashVisitor) {
+        trie.setHashVisitor(hashVisitor);
+    }
+
+    /**
+     * Version of the trie published last, for reading threads.
+     *
+     * @return trie as of the last getRootHash or commit.
+     */
+    public View<K, V> getView() {
+        return published.get();
+    }
+
+    @Override
+    public Optional<V> get(final K key) {
+        return trie.get(key);
+    }
+
+    @Override
+    public void put(final K key, final V value) {
+        trie.put(key, value);
+    }
+
+    @Override
+    public void remove(final K key) {
+        trie.remove(key);
+    }
+
+    @Override
+    public void putAll(final SortedMap<K, Optional<V>> updates) {
+        trie.putAll(updates);
+    }
+
+    @Override
+    public Bytes32 getRootHash() {
+        final Bytes32 rootHash = trie.getRootHash();
+        // Nodes loaded by the readers of the previous view are released, as commit does
+        trie.releaseStoredNodes();
+        publish(rootHash);
+        return rootHash;
+    }
+
+    @Override
+    public void commit(final NodeUpdater nodeUpdater) {
+        trie.commit(nodeUpdater);
+        publish(trie.getRootHash());
+    }
+
+    private void publish(final Bytes32 rootHash) {
+        // Updates after a snapshot copy the nodes they modify, so the published nodes stay unchanged
+        published.set(new View<K, V>(trie.snapshot().getRoot(), rootHash));
+    }
+
+    /** Immutable version of a trie, that threads can read concurrently. */
+    public static final class View<K extends Bytes, V extends Bytes> {
+        private final Node<V> root;
+        private final Bytes32 rootHash;
+
+        View(final Node<V> root, final Bytes32 rootHash) {
+            this.root = root;
+            this.rootHash = rootHash;
+        }
+
+        public Optional<V> get(final K key) {
+            checkNotNull(key);
+            return root.accept(new GetVisitor<V>(), key).getValue();
+        }
+
+        public Bytes32 getRootHash() {
+            return rootHash;
+        }
+    }
+}
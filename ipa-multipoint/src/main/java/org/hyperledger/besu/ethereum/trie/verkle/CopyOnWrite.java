@@ -0,0 +1,122 @@
+/*
+ * Copyright Hyperledger Besu Contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.besu.ethereum.trie.verkle;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.function.Predicate;
+
+
+/**
+ * Nodes that updating visitors may modify in place.
+ *
+ * In place updates modify any node. With copy-on-write, nodes possibly shared with another version of the trie are
+ * copied before their first modification, and only the copies are modified from then on. Updates thus touch the
+ * path from the root to the updated keys, while the rest of the trie stays shared between versions.
+ */
+public class CopyOnWrite<V> {
+    private final Set<Node<V>> owned;
+
+    private CopyOnWrite(final Set<Node<V>> owned) {
+        this.owned = owned;
+    }
+
+    /**
+     * @return nodes are modified in place.
+     */
+    public static <V> CopyOnWrite<V> inPlace() {
+        return new CopyOnWrite<V>(null);
+    }
+
+    /**
+     * @return shared nodes are copied before being modified.
+     */
+    public static <V> CopyOnWrite<V> copying() {
+        return new CopyOnWrite<V>(Collections.newSetFromMap(new IdentityHashMap<>()));
+    }
+
+    public boolean isCopying() {
+        return owned != null;
+    }
+
+    /**
+     * Node to modify in place of branchNode.
+     *
+     * @param branchNode node about to be modified.
+     * @return branchNode if it may be modified, or an owned copy of it.
+     */
+    public BranchNode<V> mutable(final BranchNode<V> branchNode) {
+        if (owned == null || owned.contains(branchNode)) {
+            return branchNode;
+        }
+        return own(branchNode.copy());
+    }
+
+    /**
+     * Node to modify in place of stemNode.
+     *
+     * @param stemNode node about to be modified.
+     * @return stemNode if it may be modified, or an owned copy of it.
+     */
+    public StemNode<V> mutable(final StemNode<V> stemNode) {
+        if (owned == null || owned.contains(stemNode)) {
+            return stemNode;
+        }
+        return own(stemNode.copy());
+    }
+
+    /**
+     * Marks a node that was just created, and is not shared yet, as modifiable.
+     *
+     * @param node new node.
+     * @return node.
+     */
+    public <N extends Node<V>> N own(final N node) {
+        if (owned != null) {
+            owned.add(node);
+        }
+        return node;
+    }
+
+    /**
+     * Copies the stale branches that hashing is about to modify, as HashVisitor puts hashed children back into them.
+     *
+     * @param node root of the stale subtree.
+     * @param isStale whether a node will be hashed, as HashVisitor::needsHash.
+     * @return node, or its copy if it was copied.
+     */
+    public Node<V> ownStale(final Node<V> node, final Predicate<Node<V>> isStale) {
+        if (owned == null || !(node instanceof BranchNode) || !isStale.test(node)) {
+            return node;
+        }
+        final BranchNode<V> branchNode = mutable((BranchNode<V>) node);
+        for (int i = 0; i < BranchNode.maxChild(); i++) {
+            final Node<V> child = branchNode.child((byte) i);
+            final Node<V> ownedChild = ownStale(child, isStale);
+            if (ownedChild != child) {
+                branchNode.replaceChild((byte) i, ownedChild);
+            }
+        }
+        return branchNode;
+    }
+
+    /** Releases owned nodes: they become shared, e.g. with a snapshot. */
+    public void release() {
+        if (owned != null) {
+            owned.clear();
+        }
+    }
+}
@@ -2,34 +2,49 @@ package org.hyperledger.besu.ethereum.trie.verkle;
 
 import org.apache.tuweni.bytes.Bytes;
 
+/**
+ * Gets the node for a key.
+ *
+ * The path given to visit is always the whole key, the visitor keeps the offset of the visited node in it.
+ */
 public class GetVisitor<V> implements PathNodeVisitor<V> {
     private final Node<V> NULL_NODE_RESULT = NullNode.instance();
+    private int offset = 0;
 
     @Override
-    public Node<V> visit(final BranchNode<V> branchNode, final Bytes path) {
+    public Node<V> visit(final BranchNode<V> branchNode, final Bytes key) {
         final Bytes nodePath = branchNode.getPath();
-        final Bytes commonPath = nodePath.commonPrefix(path);
-        if (commonPath.compareTo(nodePath) != 0) {
+        final int commonPathLength = KeyPath.commonPrefixLength(nodePath, key, offset);
+        if (commonPathLength != nodePath.size()) {
             // path diverges before the end of the extension, so it cannot match
             return NULL_NODE_RESULT;
         }
-        final Bytes pathSuffix = path.slice(commonPath.size());
-        final byte childIndex = pathSuffix.get(0);
-        return branchNode.child(childIndex).accept(this, pathSuffix.slice(1));
+        final byte childIndex = key.get(offset + commonPathLength);
+        offset += commonPathLength + 1;
+        return branchNode.child(childIndex).accept(this, key);
     }
 
     @Override
-    public Node<V> visit(LeafNode<V> leafNode, Bytes path) {
+    public Node<V> visit(LeafNode<V> leafNode, Bytes key) {
         final Bytes leafPath = leafNode.getPath();
-        final Bytes commonPath = leafPath.commonPrefix(path);
-        if (commonPath.compareTo(leafPath) != 0) {
+        if (KeyPath.commonPrefixLength(leafPath, key, offset) != leafPath.size()) {
             return NULL_NODE_RESULT;
         }
         return leafNode;
     }
 
     @Override
-    public Node<V> visit(NullNode<V> nullNode, Bytes path) {
+    public Node<V> visit(StemNode<V> stemNode, Bytes key) {
+        final Bytes nodePath = stemNode.getPath();
+        final int commonPathLength = KeyPath.commonPrefixLength(nodePath, key, offset);
+        if (commonPathLength != nodePath.size()) {
+            return NULL_NODE_RESULT;
+        }
+        return stemNode.child(key.get(offset + commonPathLength));
+    }
+
+    @Override
+    public Node<V> visit(NullNode<V> nullNode, Bytes key) {
         return NULL_NODE_RESULT;
     }
 }
@@ -1,53 +1,61 @@
 package org.hyperledger.besu.ethereum.trie.verkle;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
 
 
+/**
+ * Hashes the nodes which changed since they were last hashed.
+ *
+ * Nodes are hashed level by level, deepest first, so that every commitment of a level
+ * goes to the hasher in a few batched calls rather than one call per node.
+ */
 public class HashVisitor<V extends Bytes> implements PathNodeVisitor<V> {
-    Hasher<Bytes32> hasher = new IPAHasher();    
+    Hasher<Bytes32> hasher = new IPAHasher();
+
+    /**
+     * Hashes the stale nodes of a subtree and stores all of its dirty nodes, in a single pass.
+     *
+     * Each node is stored as soon as it is hashed, after its children, so that stored records carry their hash.
+     *
+     * @param root root of the subtree.
+     * @param location location of the subtree, where root is stored.
+     * @param nodeUpdater updater storing the nodes.
+     * @return hashed root.
+     */
+    public Node<V> commit(Node<V> root, Bytes location, NodeUpdater nodeUpdater) {
+        if (!needsHash(root)) {
+            // Hashed already, only left to store
+            return root.accept(new CommitVisitor<V>(nodeUpdater), location);
+        }
+        return hashTree(root, Bytes.concatenate(location, root.getPath()), updaterFor(nodeUpdater));
+    }
+
+    // Updater to store nodes with, as they are hashed
+    NodeUpdater updaterFor(NodeUpdater nodeUpdater) {
+        return nodeUpdater;
+    }
 
     @Override
     public Node<V> visit(BranchNode<V> branchNode, Bytes location) {
-        if (!branchNode.isDirty() && branchNode.getHash().isPresent()) {
-            return branchNode;
-        }
-        Bytes32 baseHash;
-        if (location.size() == 31) {  // branch with leaf nodes as children
-            baseHash = hashValues(branchNode, location);
-        } else {  // Regular internal node
-            int size = BranchNode.maxChild();
-            Bytes32[] childCommits = new Bytes32[size];
-            for (int i = 0; i < size; i++) {
-                byte index = (byte) i;
-                Node<V> child = branchNode.child(index);
-                Bytes childPath = child.getPath();
-                Bytes nextLocation = Bytes.concatenate(location, Bytes.of(index), childPath);
-                Node<V> updatedChild = child.accept(this, nextLocation);
-                branchNode.replaceChild(index, updatedChild);
-                childCommits[i] = updatedChild.getHash().get();
-            }
-            baseHash = hasher.commit(childCommits);
-        }
-        return branchNode.replaceHash(hashExtension(branchNode.getPath(), baseHash));
+        return hashTree(branchNode, location, null);
     }
 
     @Override
     public Node<V> visit(LeafNode<V> leafNode, Bytes location) {
-        Bytes path = leafNode.getPath();
-        if (path.size() == 0) {
-            // LeafNode without extension should not be visited
-            return leafNode;
-        }
-        // Remove last byte from location to get the stem
-        Bytes stem = location.slice(0, location.size() - 1);
-        Optional<V> value = leafNode.getValue();
-        byte index = path.get(path.size() - 1);
-        Bytes32 baseHash = hashStemExtensionOne(stem, value, index);
-        return leafNode.replaceHash(hashExtension(path, baseHash));
+        return hashTree(leafNode, location, null);
+    }
+
+    @Override
+    public Node<V> visit(StemNode<V> stemNode, Bytes location) {
+        return hashTree(stemNode, location, null);
     }
 
     @Override
@@ -55,60 +63,358 @@ public class HashVisitor<V extends Bytes> implements PathNodeVisitor<V> {
         return nullNode;
     }
 
-    // Should use commit_one. For now, using commit.
-    Bytes32 hashOne(Bytes32 value, byte index) {
-        int idx = Byte.toUnsignedInt(index); 
-        Bytes32[] values = new Bytes32[idx + 1];
-        Arrays.fill(values, Bytes32.ZERO);
-        values[idx] = value;
-        return hasher.commit(values);
+    // A node waiting for its hash, and where to put it once hashed
+    static class PendingNode<V> {
+        final Node<V> node;
+        final Bytes location;
+        final BranchNode<V> parent;
+        final byte index;
+        final List<PendingNode<V>> children = new ArrayList<>();
+        final List<Byte> dirtyChildren = new ArrayList<>();  // hashed but not stored yet, when committing
+        final NodeUpdater nodeUpdater;  // set when committing, hashed nodes are then stored right away
+        int size = 1;
+        boolean updateCommitment;
+        Bytes32 commitment;
+        Bytes32 leftCommitment;
+        Bytes32 rightCommitment;
+        Bytes32 leftHash;
+        Bytes32 rightHash;
+        Bytes32 hash;
+
+        PendingNode(Node<V> node, Bytes location, BranchNode<V> parent, byte index, NodeUpdater nodeUpdater) {
+            this.node = node;
+            this.location = location;
+            this.parent = parent;
+            this.index = index;
+            this.nodeUpdater = nodeUpdater;
+        }
+
+        boolean isBranch() {
+            return node instanceof BranchNode;
+        }
+
+        boolean isLeaf() {
+            return node instanceof LeafNode;
+        }
+
+        // Either a StemNode, or a branch with leaf nodes as children
+        boolean isStem() {
+            return node instanceof StemNode || (isBranch() && location.size() == 31);
+        }
     }
 
-    Bytes32 hashExtension(Bytes path, Bytes32 baseHash) {
-        Bytes revPath = path.reverse();
-        Bytes32 hash = baseHash;
-        for (int i = 0; i < path.size(); i++) {
-            hash = hashOne(hash, revPath.get(i));
+    Node<V> hashTree(Node<V> root, Bytes location, NodeUpdater nodeUpdater) {
+        if (!needsHash(root)) {
+            return root;
         }
-        return hash;
+        PendingNode<V> pending = new PendingNode<>(root, location, null, (byte) 0, nodeUpdater);
+        collect(pending);
+        return hashPending(pending);
     }
 
-    Bytes32 hashStemExtension(Bytes stem, Bytes32[] leftValues, Bytes32[] rightValues) {
-        Bytes32[] extensionHashes = new Bytes32[4];
-        extensionHashes[0] = Bytes32.rightPad(Bytes.of((byte) 1).reverse());  // extension marker
-        extensionHashes[1] = Bytes32.rightPad(stem);
-        extensionHashes[2] = hasher.commit(leftValues);
-        extensionHashes[3] = hasher.commit(rightValues);
-        return hasher.commit(extensionHashes);
+    // Hashes a collected subtree, returning its hashed root
+    Node<V> hashPending(PendingNode<V> root) {
+        hashSubtrees(root.children);
+        hashLevel(List.of(root));
+        Node<V> hashedRoot = replaceHash(root);
+        store(root, hashedRoot);
+        return hashedRoot;
     }
 
-    // Should use commit_sparse to commit low and high values
-    Bytes32 hashStemExtensionOne(Bytes stem, Optional<V> value, byte index) {
-        int idx = Byte.toUnsignedInt(index); 
-        Bytes32 leftHash;
-        Bytes32 rightHash;
-        if (idx >= 128) {
-            int rightIdx = idx - 128;
-            Bytes32[] values = new Bytes32[rightIdx + 2];
-            Arrays.fill(values, Bytes32.ZERO);
-            values[rightIdx] = getLowValue(value);
-            values[rightIdx + 1] = getHighValue(value);
-            leftHash = Bytes32.ZERO;
-            rightHash = hasher.commit(values);
+    // Hashes collected subtrees level by level and puts them back into their parents
+    void hashSubtrees(List<PendingNode<V>> roots) {
+        List<List<PendingNode<V>>> levels = new ArrayList<>();
+        List<PendingNode<V>> level = roots;
+        while (!level.isEmpty()) {
+            levels.add(level);
+            List<PendingNode<V>> next = new ArrayList<>();
+            for (PendingNode<V> pending : level) {
+                next.addAll(pending.children);
+            }
+            level = next;
+        }
+        for (int depth = levels.size() - 1; depth >= 0; depth--) {
+            hashLevel(levels.get(depth));
+            for (PendingNode<V> pending : levels.get(depth)) {
+                Node<V> hashedNode = replaceHash(pending);
+                store(pending, hashedNode);
+                pending.parent.replaceChild(pending.index, hashedNode);
+            }
+        }
+    }
+
+    // Gathers the stale descendants of a stale node
+    void collect(PendingNode<V> pending) {
+        if (!pending.isBranch()) {
+            return;
+        }
+        if (pending.isStem()) {
+            // Stem values do not have hashes of their own, but are stored on their own
+            if (pending.nodeUpdater != null) {
+                for (int i = 0; i < BranchNode.maxChild(); i++) {
+                    collectChild(pending, (byte) i);
+                }
+            }
+            return;
+        }
+        BranchNode<V> branchNode = (BranchNode<V>) pending.node;
+        pending.updateCommitment = canUpdateCommitment(branchNode.getCommitment(), branchNode);
+        if (pending.updateCommitment && pending.nodeUpdater == null) {
+            for (Byte index : branchNode.getPreviousChildren().keySet()) {
+                collectChild(pending, index);
+            }
         } else {
-            Bytes32[] values = new Bytes32[idx + 2];
-            Arrays.fill(values, Bytes32.ZERO);
-            values[idx] = getLowValue(value);
-            values[idx + 1] = getHighValue(value);
-            leftHash = hasher.commit(values);
-            rightHash = Bytes32.ZERO;
+            for (int i = 0; i < BranchNode.maxChild(); i++) {
+                collectChild(pending, (byte) i);
+            }
+        }
+    }
+
+    void collectChild(PendingNode<V> parent, byte index) {
+        BranchNode<V> branchNode = (BranchNode<V>) parent.node;
+        Node<V> child = branchNode.child(index);
+        if (needsHash(child)) {
+            Bytes nextLocation = KeyPath.append(parent.location, index, child.getPath());
+            PendingNode<V> pending = new PendingNode<>(child, nextLocation, branchNode, index, parent.nodeUpdater);
+            collect(pending);
+            parent.children.add(pending);
+            parent.size += pending.size;
+        } else if (parent.nodeUpdater != null && child.isDirty()) {
+            parent.dirtyChildren.add(index);
+        }
+    }
+
+    // Stores a node once hashed, after the dirty children that were not hashed with it
+    void store(PendingNode<V> pending, Node<V> hashedNode) {
+        if (pending.nodeUpdater == null) {
+            return;
+        }
+        if (!pending.dirtyChildren.isEmpty()) {
+            CommitVisitor<V> commitVisitor = new CommitVisitor<V>(pending.nodeUpdater);
+            BranchNode<V> branchNode = (BranchNode<V>) hashedNode;
+            for (byte index : pending.dirtyChildren) {
+                branchNode.child(index).accept(commitVisitor, Bytes.concatenate(pending.location, Bytes.of(index)));
+            }
+        }
+        Bytes location = pending.location.slice(0, pending.location.size() - hashedNode.getPath().size());
+        pending.nodeUpdater.store(location, hashedNode.getHash().get(), hashedNode.getEncodedValue());
+        hashedNode.markClean();
+    }
+
+    // Hashes nodes of the same level, whose children are all hashed already
+    void hashLevel(List<PendingNode<V>> level) {
+        // Commitments to children, or to values for stems and single-value leaves.
+        // Only non-zero entries are committed to.
+        List<byte[]> rootIndices = new ArrayList<>();
+        List<Bytes32[]> rootInputs = new ArrayList<>();
+        List<PendingNode<V>> rootOwners = new ArrayList<>();
+        List<byte[]> valueIndices = new ArrayList<>();
+        List<Bytes32[]> valueInputs = new ArrayList<>();
+        List<PendingNode<V>> valueOwners = new ArrayList<>();
+        for (PendingNode<V> pending : level) {
+            if (pending.isLeaf()) {
+                leafValues(pending, valueIndices, valueInputs);
+                valueOwners.add(pending);
+            } else if (pending.node instanceof StemNode) {
+                StemNode<V> stemNode = (StemNode<V>) pending.node;
+                if (hasher.canUpdateCommitment()
+                    && stemNode.getLeftCommitment().isPresent() && stemNode.getRightCommitment().isPresent()) {
+                    updateStem(pending, stemNode);
+                } else {
+                    stemValues(stemNode, rootIndices, rootInputs);
+                    rootOwners.add(pending);
+                }
+            } else if (pending.isStem()) {
+                BranchNode<V> branchNode = (BranchNode<V>) pending.node;
+                if (hasher.canUpdateCommitment()
+                    && branchNode.getLeftCommitment().isPresent() && branchNode.getRightCommitment().isPresent()) {
+                    updateStem(pending, branchNode);
+                } else {
+                    hashValues(branchNode, rootIndices, rootInputs);
+                    rootOwners.add(pending);
+                }
+            } else {
+                BranchNode<V> branchNode = (BranchNode<V>) pending.node;
+                if (pending.updateCommitment) {
+                    updateBranch(pending, branchNode);
+                } else {
+                    childHashes(branchNode, rootIndices, rootInputs);
+                    rootOwners.add(pending);
+                }
+            }
+        }
+        Iterator<Bytes32> roots = hasher.commitRootSparseBatch(rootIndices, rootInputs).iterator();
+        for (PendingNode<V> pending : rootOwners) {
+            if (pending.isStem()) {
+                pending.leftCommitment = roots.next();
+                pending.rightCommitment = roots.next();
+            } else {
+                pending.commitment = roots.next();
+            }
+        }
+        Iterator<Bytes32> valueHashes = hasher.commitSparseBatch(valueIndices, valueInputs).iterator();
+        for (PendingNode<V> pending : valueOwners) {
+            int idx = Byte.toUnsignedInt(pending.node.getPath().get(pending.node.getPath().size() - 1));
+            pending.leftHash = idx < 128 ? valueHashes.next() : Bytes32.ZERO;
+            pending.rightHash = idx < 128 ? Bytes32.ZERO : valueHashes.next();
+        }
+
+        // Base hashes, before extension
+        List<Bytes32> commitments = new ArrayList<>();
+        for (PendingNode<V> pending : level) {
+            if (pending.isStem()) {
+                commitments.add(pending.leftCommitment);
+                commitments.add(pending.rightCommitment);
+            } else if (pending.isBranch()) {
+                commitments.add(pending.commitment);
+            }
+        }
+        Iterator<Bytes32> scalars = hasher.groupToFieldBatch(commitments).iterator();
+        List<Bytes32[]> extensionInputs = new ArrayList<>();
+        List<PendingNode<V>> extensionOwners = new ArrayList<>();
+        for (PendingNode<V> pending : level) {
+            if (pending.isStem()) {
+                pending.leftHash = scalars.next();
+                pending.rightHash = scalars.next();
+                extensionInputs.add(stemExtension(pending.location, pending.leftHash, pending.rightHash));
+                extensionOwners.add(pending);
+            } else if (pending.isBranch()) {
+                pending.hash = scalars.next();
+            } else {
+                Bytes stem = pending.location.slice(0, pending.location.size() - 1);
+                extensionInputs.add(stemExtension(stem, pending.leftHash, pending.rightHash));
+                extensionOwners.add(pending);
+            }
+        }
+        Iterator<Bytes32> extensionHashes = hasher.commitBatch(extensionInputs).iterator();
+        for (PendingNode<V> pending : extensionOwners) {
+            pending.hash = extensionHashes.next();
+        }
+
+        // Paths, one byte per round, starting from the end
+        int maxPathSize = 0;
+        for (PendingNode<V> pending : level) {
+            maxPathSize = Math.max(maxPathSize, pending.node.getPath().size());
         }
+        for (int round = 0; round < maxPathSize; round++) {
+            List<byte[]> oneIndices = new ArrayList<>();
+            List<Bytes32[]> oneInputs = new ArrayList<>();
+            List<PendingNode<V>> oneOwners = new ArrayList<>();
+            for (PendingNode<V> pending : level) {
+                Bytes path = pending.node.getPath();
+                if (round < path.size()) {
+                    oneIndices.add(new byte[] {path.get(path.size() - 1 - round)});
+                    oneInputs.add(new Bytes32[] {pending.hash});
+                    oneOwners.add(pending);
+                }
+            }
+            Iterator<Bytes32> oneHashes = hasher.commitSparseBatch(oneIndices, oneInputs).iterator();
+            for (PendingNode<V> pending : oneOwners) {
+                pending.hash = oneHashes.next();
+            }
+        }
+    }
+
+    Node<V> replaceHash(PendingNode<V> pending) {
+        if (pending.isLeaf()) {
+            return ((LeafNode<V>) pending.node).replaceHash(pending.hash);
+        }
+        if (pending.node instanceof StemNode) {
+            return ((StemNode<V>) pending.node).replaceHash(
+                pending.hash, pending.leftCommitment, pending.rightCommitment);
+        }
+        BranchNode<V> branchNode = (BranchNode<V>) pending.node;
+        if (pending.isStem()) {
+            return branchNode.replaceHash(pending.hash, pending.leftCommitment, pending.rightCommitment);
+        }
+        return branchNode.replaceHash(pending.hash, pending.commitment);
+    }
+
+    void updateBranch(PendingNode<V> pending, BranchNode<V> branchNode) {
+        // Only replaced children contribute a change: C' = C + (new - old) * G_i
+        Bytes32 commitment = branchNode.getCommitment().get();
+        for (Map.Entry<Byte, Node<V>> previous : branchNode.getPreviousChildren().entrySet()) {
+            byte index = previous.getKey();
+            Bytes32 oldHash = previous.getValue().getHash().get();
+            Bytes32 newHash = branchNode.child(index).getHash().get();
+            if (!oldHash.equals(newHash)) {
+                commitment = hasher.updateCommitment(commitment, index, oldHash, newHash);
+            }
+        }
+        pending.commitment = commitment;
+    }
+
+    void updateStem(PendingNode<V> pending, BranchNode<V> branchNode) {
+        // Each replaced value changes its low and high parts in one of the two commitments
+        Bytes32 leftCommitment = branchNode.getLeftCommitment().get();
+        Bytes32 rightCommitment = branchNode.getRightCommitment().get();
+        for (Map.Entry<Byte, Node<V>> previous : branchNode.getPreviousChildren().entrySet()) {
+            int idx = Byte.toUnsignedInt(previous.getKey());
+            Optional<V> oldValue = previous.getValue().getValue();
+            Optional<V> newValue = branchNode.child(previous.getKey()).getValue();
+            if (idx < 128) {
+                leftCommitment = updateValue(leftCommitment, idx, oldValue, newValue);
+            } else {
+                rightCommitment = updateValue(rightCommitment, idx - 128, oldValue, newValue);
+            }
+        }
+        pending.leftCommitment = leftCommitment;
+        pending.rightCommitment = rightCommitment;
+    }
+
+    // Non-zero hashes of the children, with their index.
+    // Records do not hold the hashes of their children, so a stored branch committed to from scratch loads all of
+    // its children: up to 256 loads per branch, when the hasher or the record cannot update the commitment.
+    // They are loaded together, so that their loads overlap.
+    void childHashes(BranchNode<V> branchNode, List<byte[]> indices, List<Bytes32[]> inputs) {
+        StoredNode.loadHashes(branchNode.getChildren());
+        int size = BranchNode.maxChild();
+        byte[] childIndices = new byte[size];
+        Bytes32[] childHashes = new Bytes32[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            Bytes32 childHash = branchNode.child((byte) i).getHash().get();
+            if (!childHash.isZero()) {
+                childIndices[count] = (byte) i;
+                childHashes[count++] = childHash;
+            }
+        }
+        indices.add(Arrays.copyOf(childIndices, count));
+        inputs.add(Arrays.copyOf(childHashes, count));
+    }
+
+    void updateStem(PendingNode<V> pending, StemNode<V> stemNode) {
+        Bytes32 leftCommitment = stemNode.getLeftCommitment().get();
+        Bytes32 rightCommitment = stemNode.getRightCommitment().get();
+        for (Map.Entry<Byte, Optional<V>> previous : stemNode.getPreviousValues().entrySet()) {
+            int idx = Byte.toUnsignedInt(previous.getKey());
+            Optional<V> newValue = stemNode.getValue(previous.getKey());
+            if (idx < 128) {
+                leftCommitment = updateValue(leftCommitment, idx, previous.getValue(), newValue);
+            } else {
+                rightCommitment = updateValue(rightCommitment, idx - 128, previous.getValue(), newValue);
+            }
+        }
+        pending.leftCommitment = leftCommitment;
+        pending.rightCommitment = rightCommitment;
+    }
+
+    Bytes32[] stemExtension(Bytes stem, Bytes32 leftHash, Bytes32 rightHash) {
         Bytes32[] extensionHashes = new Bytes32[4];
         extensionHashes[0] = Bytes32.rightPad(Bytes.of((byte) 1).reverse());  // extension marker
         extensionHashes[1] = Bytes32.rightPad(stem);
         extensionHashes[2] = leftHash;
         extensionHashes[3] = rightHash;
-        return hasher.commit(extensionHashes);
+        return extensionHashes;
+    }
+
+    // Low and high parts of a single value, next to each other
+    void leafValues(PendingNode<V> pending, List<byte[]> indices, List<Bytes32[]> inputs) {
+        Bytes path = pending.node.getPath();
+        Optional<V> value = pending.node.getValue();
+        int idx = Byte.toUnsignedInt(path.get(path.size() - 1)) % 128;
+        indices.add(new byte[] {(byte) idx, (byte) (idx + 1)});
+        inputs.add(new Bytes32[] {getLowValue(value), getHighValue(value)});
     }
 
     Bytes32 getLowValue(Optional<V> value) {
@@ -126,20 +432,102 @@ public class HashVisitor<V extends Bytes> implements PathNodeVisitor<V> {
         return Bytes32.rightPad(value.get().slice(16, 16));
     }
 
-    Bytes32 hashValues(BranchNode<V> branchNode, Bytes location) {
+    // Persisted nodes are hashed before being stored, so only dirty nodes can be stale
+    boolean needsHash(Node<V> node) {
+        if (!node.isDirty()) {
+            return false;
+        }
+        if (node instanceof BranchNode) {
+            return !isHashed((BranchNode<V>) node);
+        }
+        if (node instanceof LeafNode) {
+            // LeafNode without extension has no hash of its own
+            return node.getHash().isEmpty() && node.getPath().size() > 0;
+        }
+        if (node instanceof StemNode) {
+            return node.getHash().isEmpty() || !((StemNode<V>) node).getPreviousValues().isEmpty();
+        }
+        return false;
+    }
+
+    // A branch's hash is up to date if it has one and no child was replaced since it was computed
+    boolean isHashed(BranchNode<V> branchNode) {
+        return branchNode.getHash().isPresent() && branchNode.getPreviousChildren().isEmpty();
+    }
+
+    // A commitment can be updated if the hasher supports it, the commitment exists and all replaced children had a
+    // hash when it was computed
+    boolean canUpdateCommitment(Optional<Bytes32> commitment, BranchNode<V> branchNode) {
+        if (!hasher.canUpdateCommitment() || commitment.isEmpty()) {
+            return false;
+        }
+        for (Node<V> previous : branchNode.getPreviousChildren().values()) {
+            if (previous.getHash().isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    Bytes32 updateValue(Bytes32 commitment, int idx, Optional<V> oldValue, Optional<V> newValue) {
+        Bytes32 updated = commitment;
+        Bytes32 oldLow = getLowValue(oldValue);
+        Bytes32 newLow = getLowValue(newValue);
+        if (!oldLow.equals(newLow)) {
+            updated = hasher.updateCommitment(updated, (byte) (2 * idx), oldLow, newLow);
+        }
+        Bytes32 oldHigh = getHighValue(oldValue);
+        Bytes32 newHigh = getHighValue(newValue);
+        if (!oldHigh.equals(newHigh)) {
+            updated = hasher.updateCommitment(updated, (byte) (2 * idx + 1), oldHigh, newHigh);
+        }
+        return updated;
+    }
+
+    // Low and high parts of the present values, split between the left and right commitments
+    void hashValues(BranchNode<V> branchNode, List<byte[]> indices, List<Bytes32[]> inputs) {
         // Values are little endian
         // Values are decomposed into 16 lower bytes and 16 higher bytes
         // Lower bytes are appended with a 1 to signify that a value is present
         // Each part is hashed separately
+        StoredNode.loadAll(branchNode.getChildren());
         int size = BranchNode.maxChild();
-        Bytes32[] values = new Bytes32[size * 2];
-        for (int i = 0; i < size; i++) {
-            Optional<V> value = branchNode.child((byte) i).getValue();
-            values[2 * i] = getLowValue(value);
-            values[2 * i + 1] = getHighValue(value);
+        for (int half = 0; half < 2; half++) {
+            byte[] valueIndices = new byte[size];
+            Bytes32[] values = new Bytes32[size];
+            int count = 0;
+            for (int i = 0; i < size / 2; i++) {
+                Optional<V> value = branchNode.child((byte) (half * size / 2 + i)).getValue();
+                if (value.isPresent()) {
+                    valueIndices[count] = (byte) (2 * i);
+                    values[count++] = getLowValue(value);
+                    valueIndices[count] = (byte) (2 * i + 1);
+                    values[count++] = getHighValue(value);
+                }
+            }
+            indices.add(Arrays.copyOf(valueIndices, count));
+            inputs.add(Arrays.copyOf(values, count));
+        }
+    }
+
+    // Same as hashValues, visiting only the present values
+    void stemValues(StemNode<V> stemNode, List<byte[]> indices, List<Bytes32[]> inputs) {
+        int size = StemNode.maxChild();
+        for (int half = 0; half < 2; half++) {
+            byte[] valueIndices = new byte[size];
+            Bytes32[] values = new Bytes32[size];
+            int count = 0;
+            int end = (half + 1) * size / 2;
+            for (int i = stemNode.nextValueIndex(half * size / 2); i >= 0 && i < end; i = stemNode.nextValueIndex(i + 1)) {
+                Optional<V> value = stemNode.getValue((byte) i);
+                int j = i - half * size / 2;
+                valueIndices[count] = (byte) (2 * j);
+                values[count++] = getLowValue(value);
+                valueIndices[count] = (byte) (2 * j + 1);
+                values[count++] = getHighValue(value);
+            }
+            indices.add(Arrays.copyOf(valueIndices, count));
+            inputs.add(Arrays.copyOf(values, count));
         }
-        Bytes32[] leftValues = Arrays.copyOfRange(values, 0, size);
-        Bytes32[] rightValues = Arrays.copyOfRange(values, size, 2 * size);
-        return hashStemExtension(location, leftValues, rightValues);
     }
 }
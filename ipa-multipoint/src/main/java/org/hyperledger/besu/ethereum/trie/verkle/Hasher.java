@@ -1,11 +1,85 @@
 package org.hyperledger.besu.ethereum.trie.verkle;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
 import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.units.bigints.UInt256;
 
 
 public interface Hasher<V> {
 
     public Bytes32 commit(V[] inputs);
 
-    // public Bytes32 commit_sparse(V[] input, int[] index)
-}
\ No newline at end of file
+    // Returns the commitment itself rather than its scalar
+    public Bytes32 commitRoot(V[] inputs);
+
+    // Maps a commitment returned by commitRoot to the scalar commit would have returned
+    public Bytes32 groupToField(Bytes32 commitment);
+
+    // Whether updateCommitment is supported, commitments being recomputed from all inputs otherwise, which loads
+    // every child of the stored branches that are updated
+    public default boolean canUpdateCommitment() {
+        return true;
+    }
+
+    // Updates a commitment after the input at index changed from oldInput to newInput
+    public Bytes32 updateCommitment(Bytes32 commitment, byte index, V oldInput, V newInput);
+
+    // Commits to inputs placed at the given indices, every other input being zero
+    public Bytes32 commitSparse(byte[] indices, V[] inputs);
+
+    // Same as commitSparse, but returning the commitment itself
+    public Bytes32 commitRootSparse(byte[] indices, V[] inputs);
+
+    // Commits to each input, in a single call where the implementation allows it
+    public default List<Bytes32> commitBatch(List<V[]> inputs) {
+        List<Bytes32> results = new ArrayList<>(inputs.size());
+        for (V[] input : inputs) {
+            results.add(commit(input));
+        }
+        return results;
+    }
+
+    // Same as commitBatch, but returning the commitments themselves
+    public default List<Bytes32> commitRootBatch(List<V[]> inputs) {
+        List<Bytes32> results = new ArrayList<>(inputs.size());
+        for (V[] input : inputs) {
+            results.add(commitRoot(input));
+        }
+        return results;
+    }
+
+    public default List<Bytes32> groupToFieldBatch(List<Bytes32> commitments) {
+        List<Bytes32> results = new ArrayList<>(commitments.size());
+        for (Bytes32 commitment : commitments) {
+            results.add(groupToField(commitment));
+        }
+        return results;
+    }
+
+    // Sparse version of commitBatch, indices.get(k) are the indices of inputs.get(k)
+    public default List<Bytes32> commitSparseBatch(List<byte[]> indices, List<V[]> inputs) {
+        List<Bytes32> results = new ArrayList<>(inputs.size());
+        for (int k = 0; k < inputs.size(); k++) {
+            results.add(commitSparse(indices.get(k), inputs.get(k)));
+        }
+        return results;
+    }
+
+    // Sparse version of commitRootBatch
+    public default List<Bytes32> commitRootSparseBatch(List<byte[]> indices, List<V[]> inputs) {
+        List<Bytes32> results = new ArrayList<>(inputs.size());
+        for (int k = 0; k < inputs.size(); k++) {
+            results.add(commitRootSparse(indices.get(k), inputs.get(k)));
+        }
+        return results;
+    }
+
+    // Base keys of (address, treeIndex) pairs where the implementation derives them with a dedicated routine,
+    // empty when callers should commit to the key inputs themselves
+    public default Optional<List<Bytes32>> deriveKeys(List<Bytes32> addresses, List<UInt256> treeIndices) {
+        return Optional.empty();
+    }
+}
@@ -1,7 +1,13 @@
 package org.hyperledger.besu.ethereum.trie.verkle;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.units.bigints.UInt256;
 import org.hyperledger.besu.nativelib.ipamultipoint.LibIpaMultipoint;
 
 
@@ -11,4 +17,134 @@ public class IPAHasher implements Hasher<Bytes32> {
         Bytes input_serialized = Bytes.concatenate(inputs);
         return Bytes32.wrap(LibIpaMultipoint.commit(input_serialized.toArray()));
     }
+
+    @Override
+    public Bytes32 commitRoot(Bytes32[] inputs) {
+        Bytes input_serialized = Bytes.concatenate(inputs);
+        return Bytes32.wrap(LibIpaMultipoint.commit_root(input_serialized.toArray()));
+    }
+
+    @Override
+    public Bytes32 groupToField(Bytes32 commitment) {
+        return Bytes32.wrap(LibIpaMultipoint.groupToField(commitment.toArrayUnsafe()));
+    }
+
+    @Override
+    public Bytes32 updateCommitment(Bytes32 commitment, byte index, Bytes32 oldInput, Bytes32 newInput) {
+        return Bytes32.wrap(LibIpaMultipoint.updateCommitment(
+            commitment.toArrayUnsafe(), index, oldInput.toArrayUnsafe(), newInput.toArrayUnsafe()));
+    }
+
+    @Override
+    public Bytes32 commitSparse(byte[] indices, Bytes32[] inputs) {
+        Bytes input_serialized = Bytes.concatenate(inputs);
+        return Bytes32.wrap(LibIpaMultipoint.commitSparse(indices, input_serialized.toArrayUnsafe()));
+    }
+
+    @Override
+    public Bytes32 commitRootSparse(byte[] indices, Bytes32[] inputs) {
+        return commitRootSparseBatch(List.of(indices), List.<Bytes32[]>of(inputs)).get(0);
+    }
+
+    @Override
+    public List<Bytes32> commitBatch(List<Bytes32[]> inputs) {
+        if (inputs.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int[] offsets = new int[inputs.size()];
+        byte[] flatInputs = flatten(inputs, offsets);
+        return split(LibIpaMultipoint.commitMany(flatInputs, offsets));
+    }
+
+    @Override
+    public List<Bytes32> commitRootBatch(List<Bytes32[]> inputs) {
+        if (inputs.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int[] offsets = new int[inputs.size()];
+        byte[] flatInputs = flatten(inputs, offsets);
+        return split(LibIpaMultipoint.commitRootMany(flatInputs, offsets));
+    }
+
+    @Override
+    public List<Bytes32> groupToFieldBatch(List<Bytes32> commitments) {
+        if (commitments.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Bytes32[] serialized = commitments.toArray(new Bytes32[0]);
+        return split(LibIpaMultipoint.groupToFieldMany(Bytes.concatenate(serialized).toArrayUnsafe()));
+    }
+
+    @Override
+    public List<Bytes32> commitSparseBatch(List<byte[]> indices, List<Bytes32[]> inputs) {
+        if (inputs.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int[] offsets = new int[inputs.size()];
+        byte[] flatIndices = flattenIndices(indices, offsets);
+        return split(LibIpaMultipoint.commitSparseMany(flatIndices, flatten(inputs, new int[inputs.size()]), offsets));
+    }
+
+    @Override
+    public List<Bytes32> commitRootSparseBatch(List<byte[]> indices, List<Bytes32[]> inputs) {
+        if (inputs.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int[] offsets = new int[inputs.size()];
+        byte[] flatIndices = flattenIndices(indices, offsets);
+        return split(LibIpaMultipoint.commitRootSparseMany(flatIndices, flatten(inputs, new int[inputs.size()]), offsets));
+    }
+
+    @Override
+    public Optional<List<Bytes32>> deriveKeys(List<Bytes32> addresses, List<UInt256> treeIndices) {
+        if (addresses.isEmpty()) {
+            return Optional.of(Collections.emptyList());
+        }
+        byte[] pairs = new byte[2 * Bytes32.SIZE * addresses.size()];
+        for (int k = 0; k < addresses.size(); k++) {
+            System.arraycopy(addresses.get(k).toArrayUnsafe(), 0, pairs, 2 * Bytes32.SIZE * k, Bytes32.SIZE);
+            System.arraycopy(treeIndices.get(k).toArrayUnsafe(), 0, pairs, 2 * Bytes32.SIZE * k + Bytes32.SIZE, Bytes32.SIZE);
+        }
+        return Optional.of(split(LibIpaMultipoint.deriveKeys(pairs)));
+    }
+
+    // Writes indices back to back, recording how many come before each input in offsets
+    static byte[] flattenIndices(List<byte[]> indices, int[] offsets) {
+        int size = 0;
+        for (int k = 0; k < indices.size(); k++) {
+            offsets[k] = size;
+            size += indices.get(k).length;
+        }
+        byte[] flatIndices = new byte[size];
+        for (int k = 0; k < indices.size(); k++) {
+            System.arraycopy(indices.get(k), 0, flatIndices, offsets[k], indices.get(k).length);
+        }
+        return flatIndices;
+    }
+
+    // Writes inputs back to back, recording where each one starts in offsets
+    static byte[] flatten(List<Bytes32[]> inputs, int[] offsets) {
+        int size = 0;
+        for (int k = 0; k < inputs.size(); k++) {
+            offsets[k] = size;
+            size += Bytes32.SIZE * inputs.get(k).length;
+        }
+        byte[] flatInputs = new byte[size];
+        int position = 0;
+        for (Bytes32[] input : inputs) {
+            for (Bytes32 scalar : input) {
+                System.arraycopy(scalar.toArrayUnsafe(), 0, flatInputs, position, Bytes32.SIZE);
+                position += Bytes32.SIZE;
+            }
+        }
+        return flatInputs;
+    }
+
+    static List<Bytes32> split(byte[] results) {
+        List<Bytes32> split = new ArrayList<>(results.length / Bytes32.SIZE);
+        for (int offset = 0; offset < results.length; offset += Bytes32.SIZE) {
+            split.add(Bytes32.wrap(results, offset));
+        }
+        return split;
+    }
 }
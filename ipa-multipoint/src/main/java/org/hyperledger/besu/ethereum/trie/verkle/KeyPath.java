@@ -0,0 +1,55 @@
+/*
+ * Copyright Hyperledger Besu Contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.besu.ethereum.trie.verkle;
+
+import org.apache.tuweni.bytes.Bytes;
+
+
+/**
+ * Key and location helpers that avoid intermediate slices and concatenations.
+ *
+ * Visitors walking down a key keep the whole key and the offset of the visited node in it.
+ */
+final class KeyPath {
+
+    private KeyPath() {}
+
+    // Length of the common prefix of path and the key from offset
+    static int commonPrefixLength(final Bytes path, final Bytes key, final int offset) {
+        final int maxLength = Math.min(path.size(), key.size() - offset);
+        int i = 0;
+        while (i < maxLength && path.get(i) == key.get(offset + i)) {
+            i++;
+        }
+        return i;
+    }
+
+    // Location of a child: the parent's location, the child's index and the child's path, in a single array
+    static Bytes append(final Bytes location, final byte index, final Bytes path) {
+        final byte[] bytes = new byte[location.size() + 1 + path.size()];
+        System.arraycopy(location.toArrayUnsafe(), 0, bytes, 0, location.size());
+        bytes[location.size()] = index;
+        System.arraycopy(path.toArrayUnsafe(), 0, bytes, location.size() + 1, path.size());
+        return Bytes.wrap(bytes);
+    }
+
+    // Parent's location followed by the parent's path, with room for the index of a child at the end
+    static byte[] childPrefix(final Bytes location, final Bytes path) {
+        final byte[] bytes = new byte[location.size() + path.size() + 1];
+        System.arraycopy(location.toArrayUnsafe(), 0, bytes, 0, location.size());
+        System.arraycopy(path.toArrayUnsafe(), 0, bytes, location.size(), path.size());
+        return bytes;
+    }
+}
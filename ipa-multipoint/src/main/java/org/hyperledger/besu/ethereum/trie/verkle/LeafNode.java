@@ -1,14 +1,11 @@
 package org.hyperledger.besu.ethereum.trie.verkle;
 
-import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.function.Function;
 
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
-import org.apache.tuweni.rlp.RLP;
-import org.apache.tuweni.rlp.RLPWriter;
 
 public class LeafNode<V> implements Node<V>{
     private final Optional<Bytes> location;
@@ -91,7 +88,8 @@ public class LeafNode<V> implements Node<V>{
 
     @Override
     public Node<V> replacePath(Bytes path) {
-        return new LeafNode<V>(location, value, path, hash);
+        // The hash commits to the extension path, so it must be recomputed
+        return new LeafNode<V>(location, value, path);
     }
 
     @Override
@@ -100,8 +98,7 @@ public class LeafNode<V> implements Node<V>{
             return encodedValue.get();
         }
         Bytes encodedVal = getValue().isPresent() ? valueSerializer.apply(getValue().get()) : Bytes.EMPTY;
-        List<Bytes> values = Arrays.asList(Bytes.EMPTY, getPath(), encodedVal);
-        Bytes result = RLP.encodeList(values, RLPWriter::writeValue);
+        Bytes result = NodeEncoding.encodeLeaf(getPath(), encodedVal, hash);
         this.encodedValue = Optional.of(result);
         return result;
     }
@@ -111,6 +108,11 @@ public class LeafNode<V> implements Node<V>{
         dirty = true;
     }
 
+    @Override
+    public void markClean() {
+        dirty = false;
+    }
+
     @Override
     public boolean isDirty() {
         return dirty;
@@ -0,0 +1,198 @@
+/*
+ * Copyright Hyperledger Besu Contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.besu.ethereum.trie.verkle;
+
+import java.nio.ByteBuffer;
+
+import org.apache.tuweni.bytes.Bytes;
+
+
+/**
+ * Off-heap open addressing table from node locations to record positions.
+ *
+ * Each slot holds a 64 bits hash of the location and the position of its record, the location itself being read
+ * back from the record to resolve collisions. Slots are spread over direct buffers of at most 1 GiB, for up to 2^30
+ * slots, so the index holds at most 2^29 locations. Not thread safe.
+ */
+class LocationIndex {
+    static final long ABSENT = -1;
+
+    private static final int SLOT_SIZE = 16;  // hash, then position
+    private static final int INITIAL_CAPACITY = 1 << 10;
+    private static final int SHARD_BITS = 26;  // slots per buffer
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    /** Checks whether the record at a position is the one of a location. */
+    interface RecordMatcher {
+        boolean matches(long position, Bytes location);
+    }
+
+    private final RecordMatcher matcher;
+    private ByteBuffer[] slots;
+    private int capacity;
+    private int size = 0;
+
+    LocationIndex(final RecordMatcher matcher) {
+        this.matcher = matcher;
+        this.capacity = INITIAL_CAPACITY;
+        this.slots = allocate(capacity);
+    }
+
+    /**
+     * @param location location of a node.
+     * @return position of its record, or ABSENT.
+     */
+    long get(final Bytes location) {
+        final long hash = hash(location);
+        for (int slot = slot(hash); ; slot = (slot + 1) & (capacity - 1)) {
+            final long slotHash = hashAt(slots, slot);
+            if (slotHash == 0) {
+                return ABSENT;
+            }
+            final long position = positionAt(slots, slot);
+            if (slotHash == hash && matcher.matches(position, location)) {
+                return position;
+            }
+        }
+    }
+
+    /**
+     * @param location location of a node.
+     * @param position position of its new record.
+     * @return position of the record it replaces, or ABSENT.
+     */
+    long put(final Bytes location, final long position) {
+        if (2L * (size + 1) > capacity) {
+            if (capacity == MAX_CAPACITY) {
+                throw new IllegalStateException("Location index is full, it holds at most " + MAX_CAPACITY / 2 + " locations");
+            }
+            resize(2 * capacity);
+        }
+        final long hash = hash(location);
+        for (int slot = slot(hash); ; slot = (slot + 1) & (capacity - 1)) {
+            final long slotHash = hashAt(slots, slot);
+            if (slotHash == 0) {
+                set(slots, slot, hash, position);
+                size++;
+                return ABSENT;
+            }
+            final long previous = positionAt(slots, slot);
+            if (slotHash == hash && matcher.matches(previous, location)) {
+                set(slots, slot, hash, position);
+                return previous;
+            }
+        }
+    }
+
+    /**
+     * @param location location of a node.
+     * @return position of the record it pointed to, or ABSENT.
+     */
+    long remove(final Bytes location) {
+        final long hash = hash(location);
+        int slot = slot(hash);
+        long position;
+        while (true) {
+            final long slotHash = hashAt(slots, slot);
+            if (slotHash == 0) {
+                return ABSENT;
+            }
+            position = positionAt(slots, slot);
+            if (slotHash == hash && matcher.matches(position, location)) {
+                break;
+            }
+            slot = (slot + 1) & (capacity - 1);
+        }
+        // Entries probed past the emptied slot move back into it, so that lookups do not stop short of them
+        int empty = slot;
+        for (int next = (empty + 1) & (capacity - 1); ; next = (next + 1) & (capacity - 1)) {
+            final long nextHash = hashAt(slots, next);
+            if (nextHash == 0) {
+                break;
+            }
+            final int home = slot(nextHash);
+            if (((next - home) & (capacity - 1)) >= ((next - empty) & (capacity - 1))) {
+                set(slots, empty, nextHash, positionAt(slots, next));
+                empty = next;
+            }
+        }
+        set(slots, empty, 0, 0);
+        size--;
+        return position;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void resize(final int newCapacity) {
+        final ByteBuffer[] oldSlots = slots;
+        final int oldCapacity = capacity;
+        slots = allocate(newCapacity);
+        capacity = newCapacity;
+        // Hashes are kept in the slots, so entries move without reading their records
+        for (int oldSlot = 0; oldSlot < oldCapacity; oldSlot++) {
+            final long hash = hashAt(oldSlots, oldSlot);
+            if (hash == 0) {
+                continue;
+            }
+            int slot = slot(hash);
+            while (hashAt(slots, slot) != 0) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            set(slots, slot, hash, positionAt(oldSlots, oldSlot));
+        }
+    }
+
+    private static ByteBuffer[] allocate(final int capacity) {
+        final int shardSlots = Math.min(capacity, 1 << SHARD_BITS);
+        final ByteBuffer[] shards = new ByteBuffer[capacity / shardSlots];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = ByteBuffer.allocateDirect(shardSlots * SLOT_SIZE);
+        }
+        return shards;
+    }
+
+    private static long hashAt(final ByteBuffer[] shards, final int slot) {
+        return shards[slot >>> SHARD_BITS].getLong(offset(slot));
+    }
+
+    private static long positionAt(final ByteBuffer[] shards, final int slot) {
+        return shards[slot >>> SHARD_BITS].getLong(offset(slot) + 8);
+    }
+
+    private static void set(final ByteBuffer[] shards, final int slot, final long hash, final long position) {
+        final ByteBuffer shard = shards[slot >>> SHARD_BITS];
+        shard.putLong(offset(slot), hash);
+        shard.putLong(offset(slot) + 8, position);
+    }
+
+    private static int offset(final int slot) {
+        return (slot & ((1 << SHARD_BITS) - 1)) * SLOT_SIZE;
+    }
+
+    private int slot(final long hash) {
+        return (int) (hash ^ (hash >>> 32)) & (capacity - 1);
+    }
+
+    // Never 0, which marks empty slots
+    private static long hash(final Bytes location) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < location.size(); i++) {
+            hash = (hash ^ (location.get(i) & 0xff)) * 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+}
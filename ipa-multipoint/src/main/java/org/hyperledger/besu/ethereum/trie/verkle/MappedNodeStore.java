@@ -0,0 +1,611 @@
+/*
+ * Copyright Hyperledger Besu Contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.besu.ethereum.trie.verkle;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+
+
+/**
+ * Node storage in a directory of memory mapped, append-only segment files.
+ *
+ * Stored nodes are appended to the current segment, and become durable with commit, which appends a marker holding
+ * a checksum of the records since the previous one. On opening, segments are replayed and only the batches with a
+ * valid marker are kept, so a crash loses the uncommitted nodes only. A batch continuing in the next segment is
+ * checksummed one segment at a time, as compaction may delete its first segments once it is committed.
+ *
+ * Locations are indexed off-heap, for at most 2^29 of them, and loaded nodes are views of the mapped segments rather
+ * than copies.
+ * Segments whose records were mostly replaced are compacted in the background: their live records are copied to
+ * the current segment and the file is deleted.
+ *
+ * Deleting a node appends a tombstone record, which keeps replay from bringing back the older records of its location.
+ * A tombstone is dropped when the segment holding it is compacted and no older segment is left.
+ *
+ * Uncommitted nodes are visible to getNode. Reads may run concurrently with a writing thread.
+ */
+public class MappedNodeStore implements NodeLoader, NodeUpdater, Closeable {
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    public static final double DEFAULT_COMPACTION_RATIO = 0.5;
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.log");
+    private static final int MAGIC = 0x564b4c53;
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_SIZE = 12;  // magic, format version and segment size
+    private static final byte END = 0;  // rest of the segment is empty
+    private static final byte PUT = 1;
+    private static final byte COMMIT = 2;
+    private static final byte CONTINUE = 3;  // laid out as a commit, the batch goes on in the next segment
+    private static final byte DELETE = 4;  // laid out as a put with an empty value
+    private static final int PUT_HEADER_SIZE = 6;  // type, location size and value size
+    private static final int COMMIT_SIZE = 5;  // type and checksum of the batch, always left free for a marker
+
+    private final Path directory;
+    private final int segmentSize;
+    private final double compactionRatio;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private final LocationIndex index = new LocationIndex(this::matches);
+    private final Map<Bytes, Long> pending = new HashMap<>();  // records of the batch, not indexed yet
+    private final CRC32 checksum = new CRC32();
+    private final ExecutorService compactor;
+    private Segment active;
+    private int tombstones = 0;  // indexed deletions
+
+    private static class Segment {
+        final int id;
+        final Path file;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        int position = HEADER_SIZE;  // end of the records
+        long deadBytes = 0;  // size of the replaced records
+        long tombstoneBytes = 0;  // size of the indexed tombstones
+
+        Segment(final int id, final Path file, final FileChannel channel, final MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+
+    public MappedNodeStore(final Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_COMPACTION_RATIO);
+    }
+
+    /**
+     * @param directory directory of the segment files, created if missing.
+     * @param segmentSize size of each segment file, bounding the size of a record.
+     * @param compactionRatio share of replaced records from which a segment is compacted.
+     */
+    public MappedNodeStore(final Path directory, final int segmentSize, final double compactionRatio)
+            throws IOException {
+        if (segmentSize <= HEADER_SIZE + COMMIT_SIZE || compactionRatio <= 0 || compactionRatio > 1) {
+            throw new IllegalArgumentException("Invalid store configuration");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.compactionRatio = compactionRatio;
+        Files.createDirectories(directory);
+        this.compactor = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "verkle-store-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            recover();
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public Optional<Bytes> getNode(final Bytes location, final Bytes32 hash) {
+        lock.readLock().lock();
+        try {
+            final Long pendingPosition = pending.get(location);
+            final long position = pendingPosition != null ? pendingPosition : index.get(location);
+            if (position == LocationIndex.ABSENT || isDeletion(position)) {
+                return Optional.empty();
+            }
+            return Optional.of(value(position));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Appends a node, which is durable once committed. */
+    @Override
+    public void store(final Bytes location, final Bytes32 hash, final Bytes value) {
+        lock.writeLock().lock();
+        try {
+            append(PUT, location, value);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Appends a tombstone for a location, which is durable once committed. */
+    @Override
+    public void delete(final Bytes location) {
+        lock.writeLock().lock();
+        try {
+            append(DELETE, location, Bytes.EMPTY);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Appends the nodes of a batch and commits them, so that they are all durable or none is. */
+    @Override
+    public void storeBatch(final NodeWriteBatch batch) {
+        lock.writeLock().lock();
+        try {
+            for (Bytes location : batch.getDeletedLocations()) {
+                append(DELETE, location, Bytes.EMPTY);
+            }
+            for (NodeWriteBatch.Entry entry : batch.getNodes()) {
+                append(PUT, entry.getLocation(), entry.getValue());
+            }
+            commit();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Makes the nodes stored since the previous commit durable. */
+    public void commit() {
+        boolean compact;
+        lock.writeLock().lock();
+        try {
+            commitBatch();
+            compact = segments.values().stream().anyMatch(this::isSparse);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (compact && !compactor.isShutdown()) {
+            compactor.execute(this::compact);
+        }
+    }
+
+    /** Compacts the segments whose records were mostly replaced, unless a batch is being written. */
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            if (!pending.isEmpty()) {
+                // Compacted records are committed on their own, the next commit tries again
+                return;
+            }
+            for (Segment segment : new ArrayList<>(segments.values())) {
+                if (isSparse(segment)) {
+                    compact(segment);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of committed nodes.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.size() - tombstones;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int segmentCount() {
+        lock.readLock().lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Closes the segment files, dropping the uncommitted nodes. */
+    @Override
+    public void close() throws IOException {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.writeLock().lock();
+        try {
+            for (Segment segment : segments.values()) {
+                segment.channel.close();
+            }
+            segments.clear();
+            pending.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void recover() throws IOException {
+        final List<Integer> ids = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                final Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    ids.add(Integer.parseInt(matcher.group(1)));
+                }
+            });
+        }
+        if (ids.isEmpty()) {
+            active = createSegment(0);
+            return;
+        }
+        Collections.sort(ids);
+        for (int i = 0; i < ids.size(); i++) {
+            final Segment segment = openSegment(ids.get(i), i == ids.size() - 1);
+            if (segment != null) {
+                segments.put(segment.id, segment);
+            }
+        }
+        if (segments.isEmpty()) {
+            active = createSegment(ids.get(ids.size() - 1));
+            return;
+        }
+        // Records are only indexed once their batch is known to be complete
+        final Map<Bytes, Long> batch = new LinkedHashMap<>();
+        Segment lastSegment = segments.firstEntry().getValue();
+        int lastEnd = HEADER_SIZE;
+        replay:
+        for (Segment segment : segments.values()) {
+            final ByteBuffer buffer = segment.buffer;
+            int offset = HEADER_SIZE;
+            while (offset < segmentSize && buffer.get(offset) != END) {
+                final byte type = buffer.get(offset);
+                if ((type == PUT || type == DELETE) && offset + PUT_HEADER_SIZE <= segmentSize) {
+                    final int size = PUT_HEADER_SIZE + Byte.toUnsignedInt(buffer.get(offset + 1)) + buffer.getInt(offset + 2);
+                    if (size < PUT_HEADER_SIZE || offset + size > segmentSize) {
+                        checkTornTail(segment, offset);
+                        break replay;
+                    }
+                    updateChecksum(buffer, offset, size);
+                    batch.put(location(segment, offset), position(segment.id, offset));
+                    offset += size;
+                } else if (type == CONTINUE && offset + COMMIT_SIZE <= segmentSize
+                    && buffer.getInt(offset + 1) == (int) checksum.getValue()) {
+                    checksum.reset();
+                    offset += COMMIT_SIZE;
+                } else if (type == COMMIT && offset + COMMIT_SIZE <= segmentSize
+                    && buffer.getInt(offset + 1) == (int) checksum.getValue()) {
+                    for (Map.Entry<Bytes, Long> record : batch.entrySet()) {
+                        index.put(record.getKey(), record.getValue());
+                    }
+                    batch.clear();
+                    checksum.reset();
+                    offset += COMMIT_SIZE;
+                    segment.position = offset;
+                    lastSegment = segment;
+                    lastEnd = offset;
+                } else {
+                    checkTornTail(segment, offset);
+                    break replay;
+                }
+            }
+            segment.position = offset;
+        }
+        checksum.reset();
+        // Records after the last commit marker were never committed
+        for (Segment segment : new ArrayList<>(segments.tailMap(lastSegment.id, false).values())) {
+            segments.remove(segment.id);
+            segment.channel.close();
+            Files.delete(segment.file);
+        }
+        active = lastSegment;
+        active.position = lastEnd;
+        // Pages of a torn batch may have been written in any order, none of it must be read again
+        final ByteBuffer tail = active.buffer.duplicate();
+        tail.position(lastEnd);
+        final byte[] zeros = new byte[4096];
+        while (tail.hasRemaining()) {
+            tail.put(zeros, 0, Math.min(zeros.length, tail.remaining()));
+        }
+        active.buffer.force();
+        countDeadBytes();
+    }
+
+    // Only the batch being written when the store stopped can be torn, and it is in the last segment: earlier
+    // segments were forced before the next one was created
+    private void checkTornTail(final Segment segment, final int offset) throws IOException {
+        if (segment.id != segments.lastKey()) {
+            throw new IOException("Corrupted record in " + segment.file + " at offset " + offset);
+        }
+    }
+
+    // Replaced records are the ones the index does not point to
+    private void countDeadBytes() {
+        for (Segment segment : segments.values()) {
+            for (int offset = HEADER_SIZE; offset < segment.position; ) {
+                if (isMarker(segment, offset)) {
+                    offset += COMMIT_SIZE;
+                    continue;
+                }
+                final int size = recordSize(segment, offset);
+                final long position = position(segment.id, offset);
+                if (index.get(location(segment, offset)) != position) {
+                    segment.deadBytes += size;
+                } else if (segment.buffer.get(offset) == DELETE) {
+                    countTombstone(position, 1);
+                }
+                offset += size;
+            }
+        }
+    }
+
+    private void append(final byte type, final Bytes location, final Bytes value) {
+        if (location.size() > 0xff) {
+            throw new IllegalArgumentException("Location should be at most 255 bytes");
+        }
+        final int size = PUT_HEADER_SIZE + location.size() + value.size();
+        if (HEADER_SIZE + size + COMMIT_SIZE > segmentSize) {
+            throw new IllegalArgumentException("Record does not fit in a segment");
+        }
+        if (active.position + size + COMMIT_SIZE > segmentSize) {
+            roll();
+        }
+        final int offset = active.position;
+        final ByteBuffer buffer = active.buffer.duplicate();
+        buffer.position(offset);
+        buffer.put(type);
+        buffer.put((byte) location.size());
+        buffer.putInt(value.size());
+        buffer.put(location.toArrayUnsafe());
+        buffer.put(value.toArrayUnsafe());
+        updateChecksum(active.buffer, offset, size);
+        active.position += size;
+        final Long replaced = pending.put(location, position(active.id, offset));
+        if (replaced != null) {
+            markDead(replaced);
+        }
+    }
+
+    private void commitBatch() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        active.buffer.put(active.position, COMMIT);
+        active.buffer.putInt(active.position + 1, (int) checksum.getValue());
+        active.position += COMMIT_SIZE;
+        // Segments filled by the batch were forced when rolled
+        active.buffer.force();
+        for (Map.Entry<Bytes, Long> record : pending.entrySet()) {
+            index(record.getKey(), record.getValue());
+        }
+        pending.clear();
+        checksum.reset();
+    }
+
+    private void compact(final Segment segment) {
+        if (segment == active) {
+            roll();
+        }
+        for (int offset = HEADER_SIZE; offset < segment.position; ) {
+            if (isMarker(segment, offset)) {
+                offset += COMMIT_SIZE;
+                continue;
+            }
+            final int size = recordSize(segment, offset);
+            final Bytes location = location(segment, offset);
+            final long position = position(segment.id, offset);
+            if (index.get(location) != position) {
+                offset += size;
+                continue;
+            }
+            if (segment.buffer.get(offset) == PUT) {
+                append(PUT, location, value(position));
+            } else if (segment.id == segments.firstKey()) {
+                // No older record is left for the tombstone to hide
+                index.remove(location);
+                countTombstone(position, -1);
+            } else {
+                append(DELETE, location, Bytes.EMPTY);
+            }
+            offset += size;
+        }
+        commitBatch();
+        segments.remove(segment.id);
+        try {
+            segment.channel.close();
+            Files.delete(segment.file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Tombstones only hide records of older segments, so they are garbage in the oldest one
+    private boolean isSparse(final Segment segment) {
+        final long garbage = segment.deadBytes + (segment.id == segments.firstKey() ? segment.tombstoneBytes : 0);
+        return garbage > 0 && garbage >= compactionRatio * (segment.position - HEADER_SIZE);
+    }
+
+    private void index(final Bytes location, final long position) {
+        final long replaced = index.put(location, position);
+        if (replaced != LocationIndex.ABSENT) {
+            markDead(replaced);
+            if (isDeletion(replaced)) {
+                countTombstone(replaced, -1);
+            }
+        }
+        if (isDeletion(position)) {
+            countTombstone(position, 1);
+        }
+    }
+
+    private void countTombstone(final long position, final int count) {
+        tombstones += count;
+        final Segment segment = segments.get(segmentId(position));
+        segment.tombstoneBytes += count * recordSize(segment, offset(position));
+    }
+
+    private static boolean isMarker(final Segment segment, final int offset) {
+        final byte type = segment.buffer.get(offset);
+        return type == COMMIT || type == CONTINUE;
+    }
+
+    private boolean isDeletion(final long position) {
+        return segments.get(segmentId(position)).buffer.get(offset(position)) == DELETE;
+    }
+
+    private void markDead(final long position) {
+        final Segment segment = segments.get(segmentId(position));
+        if (segment != null) {
+            segment.deadBytes += recordSize(segment, offset(position));
+        }
+    }
+
+    private void roll() {
+        if (!pending.isEmpty()) {
+            active.buffer.put(active.position, CONTINUE);
+            active.buffer.putInt(active.position + 1, (int) checksum.getValue());
+            active.position += COMMIT_SIZE;
+            checksum.reset();
+        }
+        active.buffer.force();
+        try {
+            active = createSegment(active.id + 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Segment createSegment(final int id) throws IOException {
+        final Path file = directory.resolve(String.format("segment-%08d.log", id));
+        final FileChannel channel = FileChannel.open(
+            file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, FORMAT_VERSION);
+        buffer.putInt(8, segmentSize);
+        final Segment segment = new Segment(id, file, channel, buffer);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    /**
+     * @param id id of the segment.
+     * @param last whether no later segment exists.
+     * @return opened segment, or null if it was the last one and was created without being written to.
+     */
+    private Segment openSegment(final int id, final boolean last) throws IOException {
+        final Path file = directory.resolve(String.format("segment-%08d.log", id));
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        if (last && header.getInt(0) == 0 && header.getInt(4) == 0 && header.getInt(8) == 0) {
+            // Commits force the header, so nothing was committed to it
+            channel.close();
+            Files.delete(file);
+            return null;
+        }
+        if (header.getInt(0) != MAGIC || header.getInt(4) != FORMAT_VERSION) {
+            channel.close();
+            throw new IOException("Unknown segment format in " + file);
+        }
+        if (header.getInt(8) != segmentSize || channel.size() != segmentSize) {
+            channel.close();
+            throw new IOException(
+                "Segment " + file + " has a size of " + header.getInt(8) + " bytes, the store uses " + segmentSize);
+        }
+        final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        return new Segment(id, file, channel, buffer);
+    }
+
+    private boolean matches(final long position, final Bytes location) {
+        final Segment segment = segments.get(segmentId(position));
+        final int offset = offset(position);
+        if (Byte.toUnsignedInt(segment.buffer.get(offset + 1)) != location.size()) {
+            return false;
+        }
+        for (int i = 0; i < location.size(); i++) {
+            if (segment.buffer.get(offset + PUT_HEADER_SIZE + i) != location.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Bytes location(final Segment segment, final int offset) {
+        final int locationSize = Byte.toUnsignedInt(segment.buffer.get(offset + 1));
+        return Bytes.wrapByteBuffer(segment.buffer, offset + PUT_HEADER_SIZE, locationSize);
+    }
+
+    private Bytes value(final long position) {
+        final Segment segment = segments.get(segmentId(position));
+        final int offset = offset(position);
+        final int locationSize = Byte.toUnsignedInt(segment.buffer.get(offset + 1));
+        final int valueSize = segment.buffer.getInt(offset + 2);
+        return Bytes.wrapByteBuffer(segment.buffer, offset + PUT_HEADER_SIZE + locationSize, valueSize);
+    }
+
+    private static int recordSize(final Segment segment, final int offset) {
+        return PUT_HEADER_SIZE + Byte.toUnsignedInt(segment.buffer.get(offset + 1)) + segment.buffer.getInt(offset + 2);
+    }
+
+    private void updateChecksum(final ByteBuffer buffer, final int offset, final int size) {
+        final ByteBuffer record = buffer.duplicate();
+        record.position(offset);
+        record.limit(offset + size);
+        checksum.update(record);
+    }
+
+    private static long position(final int segmentId, final int offset) {
+        return ((long) segmentId << 32) | offset;
+    }
+
+    private static int segmentId(final long position) {
+        return (int) (position >>> 32);
+    }
+
+    private static int offset(final long position) {
+        return (int) position;
+    }
+}
@@ -58,6 +58,9 @@ public interface Node<V> {
     /** Marks the node as needs to be persisted */
     void markDirty();
 
+    /** Marks the node as persisted */
+    void markClean();
+
     /**
      * Is this node not persisted and needs to be?
      *
@@ -0,0 +1,230 @@
+/*
+ * Copyright Hyperledger Besu Contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.besu.ethereum.trie.verkle;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+
+/**
+ * Bounded cache of decoded node records, keyed by location.
+ *
+ * Holds the decoded items of stored nodes, so that hot nodes skip both the NodeLoader and the decoding.
+ * Node objects themselves are not cached, as visitors update them in place.
+ *
+ * Eviction is a segmented LRU bounded by an estimate of the bytes held: new records enter a probation segment
+ * and are promoted to a protected segment when read again. A scan of cold nodes then only evicts from probation,
+ * leaving the upper levels of the trie, read on every access, in the protected segment.
+ */
+public class NodeCache {
+    private static final long ENTRY_OVERHEAD = 96;  // map entry, key and list objects
+    private static final long ITEM_OVERHEAD = 48;  // Bytes object and its backing array header
+
+    private final long maxBytes;
+    private final long protectedMaxBytes;
+    private final LinkedHashMap<Bytes, List<Bytes>> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Bytes, List<Bytes>> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private long probationBytes = 0;
+    private long protectedBytes = 0;
+
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+
+    /**
+     * @param maxBytes estimated memory budget for the cached records.
+     */
+    public NodeCache(final long maxBytes) {
+        this(maxBytes, 0.8);
+    }
+
+    /**
+     * @param maxBytes estimated memory budget for the cached records.
+     * @param protectedRatio share of the budget for records read more than once.
+     */
+    public NodeCache(final long maxBytes, final double protectedRatio) {
+        if (maxBytes < 0 || protectedRatio < 0 || protectedRatio > 1) {
+            throw new IllegalArgumentException("Invalid cache size");
+        }
+        this.maxBytes = maxBytes;
+        this.protectedMaxBytes = (long) (maxBytes * protectedRatio);
+    }
+
+    /**
+     * Record at location.
+     *
+     * @param location location of the node.
+     * @return decoded items of the node record, if cached.
+     */
+    public synchronized Optional<List<Bytes>> get(final Bytes location) {
+        List<Bytes> record = protectedSegment.get(location);
+        if (record != null) {
+            hitCount++;
+            return Optional.of(record);
+        }
+        record = probation.remove(location);
+        if (record == null) {
+            missCount++;
+            return Optional.empty();
+        }
+        hitCount++;
+        long weight = weight(location, record);
+        probationBytes -= weight;
+        protectedSegment.put(location, record);
+        protectedBytes += weight;
+        // Demote least recently used protected records back to probation
+        while (protectedBytes > protectedMaxBytes && !protectedSegment.isEmpty()) {
+            Map.Entry<Bytes, List<Bytes>> eldest = removeEldest(protectedSegment);
+            long eldestWeight = weight(eldest.getKey(), eldest.getValue());
+            protectedBytes -= eldestWeight;
+            probation.put(eldest.getKey(), eldest.getValue());
+            probationBytes += eldestWeight;
+        }
+        evict();
+        return Optional.of(record);
+    }
+
+    /**
+     * Caches the record of a node, replacing any previous one at that location.
+     *
+     * @param location location of the node.
+     * @param record decoded items of the node record.
+     */
+    public synchronized void put(final Bytes location, final List<Bytes> record) {
+        invalidate(location);
+        List<Bytes> items = Collections.unmodifiableList(record);
+        long weight = weight(location, items);
+        if (weight > maxBytes) {
+            return;
+        }
+        probation.put(location, items);
+        probationBytes += weight;
+        evict();
+    }
+
+    /**
+     * Drops the record at location.
+     *
+     * @param location location of the node.
+     */
+    public synchronized void invalidate(final Bytes location) {
+        List<Bytes> record = probation.remove(location);
+        if (record != null) {
+            probationBytes -= weight(location, record);
+        }
+        record = protectedSegment.remove(location);
+        if (record != null) {
+            protectedBytes -= weight(location, record);
+        }
+    }
+
+    public synchronized void clear() {
+        probation.clear();
+        protectedSegment.clear();
+        probationBytes = 0;
+        protectedBytes = 0;
+    }
+
+    /**
+     * Wraps an updater so that stored nodes replace their cached records.
+     *
+     * @param nodeUpdater updater persisting the nodes.
+     * @return updater storing through nodeUpdater and refreshing the cache.
+     */
+    public NodeUpdater updater(final NodeUpdater nodeUpdater) {
+        return new NodeUpdater() {
+            @Override
+            public void store(final Bytes location, final Bytes32 hash, final Bytes value) {
+                nodeUpdater.store(location, hash, value);
+                put(location, NodeEncoding.decode(value));
+            }
+
+            @Override
+            public void delete(final Bytes location) {
+                nodeUpdater.delete(location);
+                invalidate(location);
+            }
+
+            @Override
+            public void storeBatch(final NodeWriteBatch batch) {
+                nodeUpdater.storeBatch(batch);
+                for (Bytes location : batch.getDeletedLocations()) {
+                    invalidate(location);
+                }
+                for (NodeWriteBatch.Entry entry : batch.getNodes()) {
+                    put(entry.getLocation(), NodeEncoding.decode(entry.getValue()));
+                }
+            }
+        };
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public synchronized int size() {
+        return probation.size() + protectedSegment.size();
+    }
+
+    /**
+     * @return estimated bytes held by the cached records.
+     */
+    public synchronized long getSizeInBytes() {
+        return probationBytes + protectedBytes;
+    }
+
+    private void evict() {
+        while (probationBytes + protectedBytes > maxBytes) {
+            // Probation goes first, protected records only when it is empty
+            if (!probation.isEmpty()) {
+                Map.Entry<Bytes, List<Bytes>> eldest = removeEldest(probation);
+                probationBytes -= weight(eldest.getKey(), eldest.getValue());
+            } else {
+                Map.Entry<Bytes, List<Bytes>> eldest = removeEldest(protectedSegment);
+                protectedBytes -= weight(eldest.getKey(), eldest.getValue());
+            }
+            evictionCount++;
+        }
+    }
+
+    private static Map.Entry<Bytes, List<Bytes>> removeEldest(final LinkedHashMap<Bytes, List<Bytes>> segment) {
+        Iterator<Map.Entry<Bytes, List<Bytes>>> iterator = segment.entrySet().iterator();
+        Map.Entry<Bytes, List<Bytes>> eldest = iterator.next();
+        iterator.remove();
+        return Map.entry(eldest.getKey(), eldest.getValue());
+    }
+
+    private static long weight(final Bytes location, final List<Bytes> record) {
+        long weight = ENTRY_OVERHEAD + location.size();
+        for (Bytes item : record) {
+            weight += ITEM_OVERHEAD + item.size();
+        }
+        return weight;
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright Hyperledger Besu Contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.besu.ethereum.trie.verkle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.bytes.MutableBytes;
+import org.apache.tuweni.rlp.RLP;
+
+
+/**
+ * Binary encoding of stored nodes.
+ *
+ * A record starts with a version, a node type and the length of the node's path, followed by the path.
+ * Then come fixed size fields depending on the type:
+ * <ul>
+ *   <li>leaf: value length, value, and hash if the leaf has one.</li>
+ *   <li>branch: hash, children bitmap, then one commitment for internal nodes or two for stems.</li>
+ *   <li>stem: hash, values bitmap, left and right commitments, stem, then each present value after its length.</li>
+ * </ul>
+ *
+ * Records decode to the same items as the RLP lists nodes were stored as before, the items being slices of the
+ * record. RLP records are still decoded, and can be rewritten with migrate.
+ */
+public class NodeEncoding {
+    public static final byte VERSION = 1;
+    static final byte LEAF = 1;
+    static final byte BRANCH = 2;
+    static final byte STEM = 3;
+
+    private static final int HEADER_SIZE = 3;  // version, type and path length
+    private static final int STEM_SIZE = 31;
+    private static final int RLP_LIST_PREFIX = 0xc0;  // RLP records are lists
+
+    public static Bytes encodeLeaf(final Bytes path, final Bytes value, final Optional<Bytes32> hash) {
+        checkLength(value.size(), "Value");
+        final MutableBytes out = header(LEAF, path, 1 + value.size() + (hash.isPresent() ? Bytes32.SIZE : 0));
+        int offset = HEADER_SIZE + path.size();
+        out.set(offset++, (byte) value.size());
+        out.set(offset, value);
+        offset += value.size();
+        if (hash.isPresent()) {
+            out.set(offset, hash.get());
+        }
+        return out;
+    }
+
+    /**
+     * @param commitments commitment of an internal node, left and right commitments of a stem, or none.
+     */
+    public static Bytes encodeBranch(
+            final Bytes32 hash, final Bytes path, final Bytes32 childrenBitmap, final List<Bytes32> commitments) {
+        final MutableBytes out = header(BRANCH, path, (2 + commitments.size()) * Bytes32.SIZE);
+        int offset = HEADER_SIZE + path.size();
+        out.set(offset, hash);
+        out.set(offset + Bytes32.SIZE, childrenBitmap);
+        offset += 2 * Bytes32.SIZE;
+        for (Bytes32 commitment : commitments) {
+            out.set(offset, commitment);
+            offset += Bytes32.SIZE;
+        }
+        return out;
+    }
+
+    /**
+     * @param values present values, in index order.
+     */
+    public static Bytes encodeStem(
+            final Bytes32 hash,
+            final Bytes path,
+            final Bytes32 valuesBitmap,
+            final Bytes32 leftCommitment,
+            final Bytes32 rightCommitment,
+            final Bytes stem,
+            final List<Bytes> values) {
+        if (stem.size() != STEM_SIZE) {
+            throw new IllegalArgumentException("Stem should be 31 bytes");
+        }
+        int size = 4 * Bytes32.SIZE + STEM_SIZE;
+        for (Bytes value : values) {
+            checkLength(value.size(), "Value");
+            size += 1 + value.size();
+        }
+        final MutableBytes out = header(STEM, path, size);
+        int offset = HEADER_SIZE + path.size();
+        out.set(offset, hash);
+        out.set(offset + Bytes32.SIZE, valuesBitmap);
+        out.set(offset + 2 * Bytes32.SIZE, leftCommitment);
+        out.set(offset + 3 * Bytes32.SIZE, rightCommitment);
+        out.set(offset + 4 * Bytes32.SIZE, stem);
+        offset += 4 * Bytes32.SIZE + STEM_SIZE;
+        for (Bytes value : values) {
+            out.set(offset++, (byte) value.size());
+            out.set(offset, value);
+            offset += value.size();
+        }
+        return out;
+    }
+
+    /**
+     * Items of a stored node record.
+     *
+     * Leaves decode to (empty, path, value[, hash]), branches to (hash, path, children bitmap, commitments...)
+     * and stems to (hash, path, values bitmap, left commitment, right commitment, stem, values...).
+     *
+     * @param encoded binary or RLP record.
+     * @return decoded items, slices of encoded unless it is an RLP record.
+     */
+    public static List<Bytes> decode(final Bytes encoded) {
+        if (isRlp(encoded)) {
+            return RLP.decodeToList(encoded, reader -> reader.readValue().copy());
+        }
+        if (encoded.size() < HEADER_SIZE || encoded.get(0) != VERSION) {
+            throw new IllegalArgumentException("Invalid node record");
+        }
+        final byte type = encoded.get(1);
+        final int pathSize = Byte.toUnsignedInt(encoded.get(2));
+        int offset = HEADER_SIZE + pathSize;
+        checkAvailable(encoded, offset);
+        final Bytes path = encoded.slice(HEADER_SIZE, pathSize);
+        final List<Bytes> items = new ArrayList<>();
+        if (type == LEAF) {
+            checkAvailable(encoded, offset + 1);
+            final int valueSize = Byte.toUnsignedInt(encoded.get(offset++));
+            checkAvailable(encoded, offset + valueSize);
+            items.add(Bytes.EMPTY);
+            items.add(path);
+            items.add(encoded.slice(offset, valueSize));
+            offset += valueSize;
+            if (offset < encoded.size()) {
+                checkAvailable(encoded, offset + Bytes32.SIZE);
+                items.add(encoded.slice(offset, Bytes32.SIZE));
+            }
+        } else if (type == BRANCH) {
+            final int commitmentCount = (encoded.size() - offset) / Bytes32.SIZE - 2;
+            if (commitmentCount < 0 || commitmentCount > 2 || (encoded.size() - offset) % Bytes32.SIZE != 0) {
+                throw new IllegalArgumentException("Invalid node record");
+            }
+            items.add(encoded.slice(offset, Bytes32.SIZE));
+            items.add(path);
+            for (offset += Bytes32.SIZE; offset < encoded.size(); offset += Bytes32.SIZE) {
+                items.add(encoded.slice(offset, Bytes32.SIZE));
+            }
+        } else if (type == STEM) {
+            checkAvailable(encoded, offset + 4 * Bytes32.SIZE + STEM_SIZE);
+            items.add(encoded.slice(offset, Bytes32.SIZE));
+            items.add(path);
+            items.add(encoded.slice(offset + Bytes32.SIZE, Bytes32.SIZE));
+            items.add(encoded.slice(offset + 2 * Bytes32.SIZE, Bytes32.SIZE));
+            items.add(encoded.slice(offset + 3 * Bytes32.SIZE, Bytes32.SIZE));
+            items.add(encoded.slice(offset + 4 * Bytes32.SIZE, STEM_SIZE));
+            offset += 4 * Bytes32.SIZE + STEM_SIZE;
+            while (offset < encoded.size()) {
+                final int valueSize = Byte.toUnsignedInt(encoded.get(offset++));
+                checkAvailable(encoded, offset + valueSize);
+                items.add(encoded.slice(offset, valueSize));
+                offset += valueSize;
+            }
+        } else {
+            throw new IllegalArgumentException("Invalid node type " + type);
+        }
+        return items;
+    }
+
+    /**
+     * @param encoded stored node record.
+     * @return whether the record is in the RLP format used before the binary encoding.
+     */
+    public static boolean isRlp(final Bytes encoded) {
+        return !encoded.isEmpty() && Byte.toUnsignedInt(encoded.get(0)) >= RLP_LIST_PREFIX;
+    }
+
+    /**
+     * Rewrites an RLP record in the binary encoding.
+     *
+     * Records with no binary equivalent, such as branches stored without a children bitmap, are kept as they are.
+     *
+     * @param encoded stored node record.
+     * @return binary record.
+     */
+    public static Bytes migrate(final Bytes encoded) {
+        if (!isRlp(encoded)) {
+            return encoded;
+        }
+        final List<Bytes> items = decode(encoded);
+        if (items.size() < 3) {  // NullNode, or branch without children bitmap
+            return encoded;
+        }
+        if (items.get(0).isEmpty()) {
+            final Optional<Bytes32> hash =
+                items.size() > 3 ? Optional.of(Bytes32.wrap(items.get(3))) : Optional.empty();
+            return encodeLeaf(items.get(1), items.get(2), hash);
+        }
+        final Bytes32 hash = Bytes32.wrap(items.get(0));
+        final Bytes32 bitmap = Bytes32.wrap(items.get(2));
+        if (items.size() > 5) {
+            return encodeStem(
+                hash, items.get(1), bitmap, Bytes32.wrap(items.get(3)), Bytes32.wrap(items.get(4)), items.get(5),
+                items.subList(6, items.size()));
+        }
+        final List<Bytes32> commitments = new ArrayList<>();
+        for (Bytes commitment : items.subList(3, items.size())) {
+            commitments.add(Bytes32.wrap(commitment));
+        }
+        return encodeBranch(hash, items.get(1), bitmap, commitments);
+    }
+
+    private static MutableBytes header(final byte type, final Bytes path, final int bodySize) {
+        checkLength(path.size(), "Path");
+        final MutableBytes out = MutableBytes.create(HEADER_SIZE + path.size() + bodySize);
+        out.set(0, VERSION);
+        out.set(1, type);
+        out.set(2, (byte) path.size());
+        out.set(HEADER_SIZE, path);
+        return out;
+    }
+
+    private static void checkLength(final int size, final String field) {
+        if (size > 0xff) {
+            throw new IllegalArgumentException(field + " should be at most 255 bytes");
+        }
+    }
+
+    private static void checkAvailable(final Bytes encoded, final int end) {
+        if (end > encoded.size()) {
+            throw new IllegalArgumentException("Invalid node record");
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package org.hyperledger.besu.ethereum.trie.verkle;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 import org.apache.tuweni.bytes.Bytes;
@@ -7,4 +9,20 @@ import org.apache.tuweni.bytes.Bytes32;
 
 public interface NodeFactory<V> {
     Optional<Node<V>> retrieve(final Bytes location, final Bytes32 hash);
+
+    /**
+     * Retrieves several nodes at once, such as siblings about to be read together.
+     *
+     * By default, nodes are retrieved one at a time.
+     *
+     * @param locations locations of the nodes.
+     * @return nodes, in the order of locations.
+     */
+    default List<Optional<Node<V>>> retrieveAll(final List<Bytes> locations) {
+        final List<Optional<Node<V>>> nodes = new ArrayList<>(locations.size());
+        for (Bytes location : locations) {
+            nodes.add(retrieve(location, null));
+        }
+        return nodes;
+    }
 }
\ No newline at end of file
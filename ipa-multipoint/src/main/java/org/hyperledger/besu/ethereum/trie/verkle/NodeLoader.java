@@ -14,11 +14,43 @@
  */
 package org.hyperledger.besu.ethereum.trie.verkle;
 
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
 
 public interface NodeLoader {
     public Optional<Bytes> getNode(Bytes location, Bytes32 hash);
+
+    /**
+     * Loads a node without waiting for it.
+     *
+     * Storages with an asynchronous API should override it, or be wrapped in an AsyncNodeLoader.
+     * By default, the node is loaded by the calling thread.
+     *
+     * @param location location of the node.
+     * @param hash hash of the node, if known.
+     * @return encoded node, once loaded.
+     */
+    public default CompletableFuture<Optional<Bytes>> getNodeAsync(Bytes location, Bytes32 hash) {
+        return CompletableFuture.completedFuture(getNode(location, hash));
+    }
+
+    /**
+     * Loads several nodes at once.
+     *
+     * Storages with a multi-get should override it, so a level of the trie is loaded in a single round trip.
+     * By default, all the loads are started before waiting for any, so asynchronous loads run concurrently.
+     *
+     * @param locations locations of the nodes.
+     * @return encoded nodes, in the order of locations.
+     */
+    public default List<Optional<Bytes>> getNodes(List<Bytes> locations) {
+        final List<CompletableFuture<Optional<Bytes>>> loads =
+            locations.stream().map(location -> getNodeAsync(location, null)).collect(Collectors.toList());
+        return loads.stream().map(CompletableFuture::join).collect(Collectors.toList());
+    }
 }
\ No newline at end of file
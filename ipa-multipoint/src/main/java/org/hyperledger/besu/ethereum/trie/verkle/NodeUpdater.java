@@ -21,4 +21,26 @@ public interface NodeUpdater {
     //This method is called to ask Besu to save the node in the database (value is the node represented as a list of bytes.
     //RLP or something else for verkle).
     void store(Bytes location, Bytes32 hash, Bytes value);
+
+    /**
+     * Deletes the node stored at a location that was left empty, e.g. by a removal or a node moving up the trie.
+     *
+     * By default nothing is deleted, and the records of removed nodes stay in storage.
+     *
+     * @param location location of a node that is no longer in the trie.
+     */
+    default void delete(final Bytes location) {}
+
+    /**
+     * Stores the nodes of a batch, such as the nodes committed for a block.
+     *
+     * By default, locations are deleted then nodes stored one at a time with delete and store, so the batch is not
+     * atomic: a crash may leave part of it stored. Only updaters overriding this method, e.g. to write the batch in
+     * one database transaction, store it atomically.
+     *
+     * @param batch nodes sorted by location, and locations to delete.
+     */
+    default void storeBatch(final NodeWriteBatch batch) {
+        batch.storeEach(this);
+    }
 }
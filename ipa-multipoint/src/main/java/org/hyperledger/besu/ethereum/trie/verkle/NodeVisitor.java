@@ -21,5 +21,7 @@ public interface NodeVisitor<V> {
 
     Node<V> visit(LeafNode<V> leafNode);
 
+    Node<V> visit(StemNode<V> stemNode);
+
     Node<V> visit(NullNode<V> nullNode);
 }
\ No newline at end of file
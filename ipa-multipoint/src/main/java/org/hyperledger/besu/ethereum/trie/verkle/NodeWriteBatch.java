@@ -0,0 +1,135 @@
+/*
+ * Copyright Hyperledger Besu Contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.besu.ethereum.trie.verkle;
+
+import java.util.Collection;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+
+
+/**
+ * Nodes stored and deleted together, such as the nodes committed for a block, to be flushed to an updater at once.
+ *
+ * Nodes are kept sorted by location in lexicographic order, which is the key order of most databases. The last
+ * operation on a location wins: a location stored after being deleted keeps its node, and the other way round.
+ * Not thread safe.
+ */
+public class NodeWriteBatch implements NodeUpdater {
+    private final TreeMap<Bytes, Entry> nodes = new TreeMap<>(NodeWriteBatch::compareLocations);
+    private final TreeSet<Bytes> deletedLocations = new TreeSet<>(NodeWriteBatch::compareLocations);
+
+    @Override
+    public void store(final Bytes location, final Bytes32 hash, final Bytes value) {
+        deletedLocations.remove(location);
+        nodes.put(location, new Entry(location, hash, value));
+    }
+
+    @Override
+    public void delete(final Bytes location) {
+        nodes.remove(location);
+        deletedLocations.add(location);
+    }
+
+    /**
+     * @return stored nodes, sorted by location.
+     */
+    public Collection<Entry> getNodes() {
+        return nodes.values();
+    }
+
+    /**
+     * @return locations to delete, none of which is stored by the batch, sorted.
+     */
+    public Collection<Bytes> getDeletedLocations() {
+        return deletedLocations;
+    }
+
+    public int size() {
+        return nodes.size() + deletedLocations.size();
+    }
+
+    public boolean isEmpty() {
+        return nodes.isEmpty() && deletedLocations.isEmpty();
+    }
+
+    /**
+     * Deletes then stores the nodes one at a time, in location order.
+     *
+     * @param nodeUpdater updater storing the nodes.
+     */
+    public void storeEach(final NodeUpdater nodeUpdater) {
+        for (Bytes location : deletedLocations) {
+            nodeUpdater.delete(location);
+        }
+        for (Entry entry : nodes.values()) {
+            nodeUpdater.store(entry.location, entry.hash, entry.value);
+        }
+    }
+
+    /**
+     * Flushes the nodes to an updater with NodeUpdater.storeBatch, and empties the batch.
+     *
+     * Whether the batch is written atomically depends on the updater, see NodeUpdater.storeBatch.
+     *
+     * @param nodeUpdater updater storing the batch.
+     */
+    public void flush(final NodeUpdater nodeUpdater) {
+        if (!isEmpty()) {
+            nodeUpdater.storeBatch(this);
+            nodes.clear();
+            deletedLocations.clear();
+        }
+    }
+
+    // Unsigned lexicographic order, unlike Bytes.compareTo which orders by numeric value
+    static int compareLocations(final Bytes a, final Bytes b) {
+        final int size = Math.min(a.size(), b.size());
+        for (int i = 0; i < size; i++) {
+            final int cmp = Integer.compare(a.get(i) & 0xff, b.get(i) & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(a.size(), b.size());
+    }
+
+    /** Stored node of a batch, as its encoded value. */
+    public static final class Entry {
+        private final Bytes location;
+        private final Bytes32 hash;
+        private final Bytes value;
+
+        Entry(final Bytes location, final Bytes32 hash, final Bytes value) {
+            this.location = location;
+            this.hash = hash;
+            this.value = value;
+        }
+
+        public Bytes getLocation() {
+            return location;
+        }
+
+        public Bytes32 getHash() {
+            return hash;
+        }
+
+        public Bytes getValue() {
+            return value;
+        }
+    }
+}
@@ -63,4 +63,9 @@ public class NullNode<V> implements Node<V> {
     public void markDirty() {
         // do nothing
     }
+
+    @Override
+    public void markClean() {
+        // do nothing
+    }
 }
\ No newline at end of file
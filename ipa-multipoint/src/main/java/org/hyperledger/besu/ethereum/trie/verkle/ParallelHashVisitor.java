@@ -0,0 +1,114 @@
+/*
+ * Copyright Hyperledger Besu Contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.besu.ethereum.trie.verkle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+
+
+/**
+ * Hashes sibling subtrees concurrently.
+ *
+ * Children of a stale node with at least threshold stale nodes below them are hashed in their own task,
+ * smaller ones are hashed together level by level as in HashVisitor. The root hash is the same.
+ */
+public class ParallelHashVisitor<V extends Bytes> extends HashVisitor<V> {
+    public static final int DEFAULT_THRESHOLD = 64;
+
+    private final ForkJoinPool pool;
+    private final int threshold;
+
+    public ParallelHashVisitor() {
+        this(ForkJoinPool.commonPool(), DEFAULT_THRESHOLD);
+    }
+
+    public ParallelHashVisitor(ForkJoinPool pool, int threshold) {
+        this.pool = pool;
+        this.threshold = threshold;
+    }
+
+    @Override
+    NodeUpdater updaterFor(NodeUpdater nodeUpdater) {
+        // Subtrees are stored from several threads, every method forwards so that overrides are kept
+        final Object lock = new Object();
+        return new NodeUpdater() {
+            @Override
+            public void store(final Bytes location, final Bytes32 hash, final Bytes value) {
+                synchronized (lock) {
+                    nodeUpdater.store(location, hash, value);
+                }
+            }
+
+            @Override
+            public void delete(final Bytes location) {
+                synchronized (lock) {
+                    nodeUpdater.delete(location);
+                }
+            }
+
+            @Override
+            public void storeBatch(final NodeWriteBatch batch) {
+                synchronized (lock) {
+                    nodeUpdater.storeBatch(batch);
+                }
+            }
+        };
+    }
+
+    @Override
+    Node<V> hashPending(PendingNode<V> root) {
+        return pool.invoke(new HashTask(root));
+    }
+
+    private class HashTask extends RecursiveTask<Node<V>> {
+        private static final long serialVersionUID = 1L;
+
+        private final PendingNode<V> pending;
+
+        HashTask(PendingNode<V> pending) {
+            this.pending = pending;
+        }
+
+        @Override
+        protected Node<V> compute() {
+            if (pending.size < threshold) {
+                return ParallelHashVisitor.super.hashPending(pending);
+            }
+            List<HashTask> tasks = new ArrayList<>();
+            List<PendingNode<V>> smallChildren = new ArrayList<>();
+            for (PendingNode<V> child : pending.children) {
+                if (child.size < threshold) {
+                    smallChildren.add(child);
+                } else {
+                    HashTask task = new HashTask(child);
+                    task.fork();
+                    tasks.add(task);
+                }
+            }
+            // Children only touch their own subtree, so the parent is updated from this thread only
+            hashSubtrees(smallChildren);
+            for (HashTask task : tasks) {
+                task.pending.parent.replaceChild(task.pending.index, task.join());
+            }
+            pending.children.clear();
+            return ParallelHashVisitor.super.hashPending(pending);
+        }
+    }
+}
@@ -15,5 +15,7 @@ public interface PathNodeVisitor<V> {
 
     Node<V> visit(LeafNode<V> leafNode, Bytes path);
 
+    Node<V> visit(StemNode<V> stemNode, Bytes path);
+
     Node<V> visit(NullNode<V> nullNode, Bytes path);
 }
\ No newline at end of file
@@ -17,69 +17,99 @@ package org.hyperledger.besu.ethereum.trie.verkle;
 import org.apache.tuweni.bytes.Bytes;
 
 
+/**
+ * Puts a value at a key.
+ *
+ * The path given to visit is always the whole key, the visitor keeps the offset of the visited node in it.
+ */
 public class PutVisitor<V> implements PathNodeVisitor<V> {
     private V value;
+    private final CopyOnWrite<V> copyOnWrite;
+    private int offset = 0;
 
     public PutVisitor(V value) {
+        this(value, CopyOnWrite.inPlace());
+    }
+
+    public PutVisitor(V value, CopyOnWrite<V> copyOnWrite) {
         this.value = value;
+        this.copyOnWrite = copyOnWrite;
     }
 
     protected Node<V> insertNewBranching(
             final Node<V> node,
-            final Bytes commonPath,
-            final Bytes pathSuffix, 
-            final Bytes nodeSuffix) {
-        final Node<V> updatedNode = node.replacePath(nodeSuffix.slice(1));
+            final int commonPathLength,
+            final Bytes key) {
+        final Bytes nodePath = node.getPath();
+        if (nodePath.size() == commonPathLength + 1 && node.getValue().isPresent()) {
+            // Only the last byte differs: both values share a stem
+            final StemNode<V> stemNode = copyOnWrite.own(new StemNode<V>(
+                node.getLocation(), key.slice(0, offset + commonPathLength), nodePath.slice(0, commonPathLength)));
+            stemNode.setValue(nodePath.get(commonPathLength), node.getValue().get());
+            stemNode.setValue(key.get(offset + commonPathLength), value);
+            return stemNode;
+        }
+        final Node<V> updatedNode = node.replacePath(nodePath.slice(commonPathLength + 1));
         // Should also add byte to location
-        BranchNode<V> newBranchNode = new BranchNode<V>(node.getLocation(), commonPath);
-        newBranchNode.replaceChild(nodeSuffix.get(0), updatedNode);
-        final Node<V> insertedNode = newBranchNode.child(pathSuffix.get(0)).accept(this, pathSuffix.slice(1));
-        newBranchNode.replaceChild(pathSuffix.get(0), insertedNode);
+        BranchNode<V> newBranchNode = copyOnWrite.own(new BranchNode<V>(node.getLocation(), nodePath.slice(0, commonPathLength)));
+        newBranchNode.replaceChild(nodePath.get(commonPathLength), updatedNode);
+        final byte childIndex = key.get(offset + commonPathLength);
+        offset += commonPathLength + 1;
+        final Node<V> insertedNode = newBranchNode.child(childIndex).accept(this, key);
+        newBranchNode.replaceChild(childIndex, insertedNode);
         return newBranchNode;
     }
 
     @Override
-    public Node<V> visit(final BranchNode<V> branchNode, final Bytes path) {
+    public Node<V> visit(final BranchNode<V> branchNode, final Bytes key) {
         final Bytes nodePath = branchNode.getPath();
-        final Bytes commonPath = nodePath.commonPrefix(path);
-        final int commonPathLength = commonPath.size();
-        final Bytes pathSuffix = path.slice(commonPathLength);
-        final Bytes nodeSuffix = nodePath.slice(commonPathLength);
-        if (commonPath.compareTo(nodePath) == 0) {
-            final byte childIndex = pathSuffix.get(0);
-            final Node<V> updatedChild = branchNode.child(childIndex).accept(this, pathSuffix.slice(1));
-            branchNode.replaceChild(childIndex, updatedChild);
-            if (updatedChild.isDirty()) {
-                branchNode.markDirty();
-            }
-            return branchNode;
+        final int commonPathLength = KeyPath.commonPrefixLength(nodePath, key, offset);
+        if (commonPathLength == nodePath.size()) {
+            final BranchNode<V> updatedNode = copyOnWrite.mutable(branchNode);
+            final byte childIndex = key.get(offset + commonPathLength);
+            offset += commonPathLength + 1;
+            final Node<V> updatedChild = updatedNode.child(childIndex).accept(this, key);
+            updatedNode.replaceChild(childIndex, updatedChild);
+            updatedNode.markDirty();
+            return updatedNode;
         } else {
-            return insertNewBranching(branchNode, commonPath, pathSuffix, nodeSuffix);
+            return insertNewBranching(branchNode, commonPathLength, key);
         }
     }
 
     @Override
-    public Node<V> visit(final LeafNode<V> leafNode, final Bytes path) {
+    public Node<V> visit(final LeafNode<V> leafNode, final Bytes key) {
         /* Leaf node is used to store a value.
          * However, it is a mixture with ExtensionNode and can have a non-empty path:
          * An extension all the way to a LeafNode is stored as a single LeafNode
          */
         final Bytes nodePath = leafNode.getPath();
-        final Bytes commonPath = nodePath.commonPrefix(path);
-        final int commonPathLength = commonPath.size();
-        final Bytes pathSuffix = path.slice(commonPathLength);
-        final Bytes nodeSuffix = nodePath.slice(commonPathLength);
-        if (commonPath.compareTo(nodePath) == 0) {
-            final LeafNode<V> newNode = new LeafNode<V>(leafNode.getLocation(), value, path);
+        final int commonPathLength = KeyPath.commonPrefixLength(nodePath, key, offset);
+        if (commonPathLength == nodePath.size()) {
+            // Keys have the same size, so the rest of the key is the leaf's path
+            final LeafNode<V> newNode = new LeafNode<V>(leafNode.getLocation(), value, nodePath);
             newNode.markDirty();
             return newNode;
         }
 
-        return insertNewBranching(leafNode, commonPath, pathSuffix, nodeSuffix);
+        return insertNewBranching(leafNode, commonPathLength, key);
+    }
+
+    @Override
+    public Node<V> visit(final StemNode<V> stemNode, final Bytes key) {
+        final Bytes nodePath = stemNode.getPath();
+        final int commonPathLength = KeyPath.commonPrefixLength(nodePath, key, offset);
+        if (commonPathLength == nodePath.size()) {
+            final StemNode<V> updatedNode = copyOnWrite.mutable(stemNode);
+            updatedNode.setValue(key.get(offset + commonPathLength), value);
+            updatedNode.markDirty();
+            return updatedNode;
+        }
+        return insertNewBranching(stemNode, commonPathLength, key);
     }
 
     @Override
-    public Node<V> visit(final NullNode<V> nullNode, final Bytes path) {
-        return new LeafNode<V>(value, path);
+    public Node<V> visit(final NullNode<V> nullNode, final Bytes key) {
+        return new LeafNode<V>(value, key.slice(offset));
     }
-}
\ No newline at end of file
+}
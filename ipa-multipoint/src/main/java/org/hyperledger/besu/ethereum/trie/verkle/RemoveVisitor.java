@@ -2,72 +2,149 @@ package org.hyperledger.besu.ethereum.trie.verkle;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 import org.apache.tuweni.bytes.Bytes;
 
+/**
+ * Removes the value at a key.
+ *
+ * The path given to visit is always the whole key, the visitor keeps the offset of the visited node in it.
+ */
 public class RemoveVisitor<V> implements PathNodeVisitor<V> {
     private final Node<V> NULL_NODE = NullNode.instance();
+    private final CopyOnWrite<V> copyOnWrite;
+    private final Consumer<Bytes> removedLocations;
+    private int offset = 0;
 
-    protected Node<V> mergeSingleBranching(
-            final Node<V> node,
-            final Bytes commonPath,
-            final Bytes pathSuffix, 
-            final Bytes nodeSuffix) {
-        final Node<V> updatedNode = node.replacePath(nodeSuffix.slice(1));
-        // Should also add byte to location
-        BranchNode<V> newBranchNode = new BranchNode<V>(node.getLocation(), commonPath);
-        newBranchNode.replaceChild(nodeSuffix.get(0), updatedNode);
-        final Node<V> insertedNode = newBranchNode.child(pathSuffix.get(0)).accept(this, pathSuffix.slice(1));
-        newBranchNode.replaceChild(pathSuffix.get(0), insertedNode);
-        return newBranchNode;
+    public RemoveVisitor() {
+        this(CopyOnWrite.inPlace());
+    }
+
+    public RemoveVisitor(final CopyOnWrite<V> copyOnWrite) {
+        this(copyOnWrite, location -> {});
+    }
+
+    /**
+     * @param copyOnWrite nodes that may be modified in place.
+     * @param removedLocations receives the locations left empty, whose stored nodes are to be deleted.
+     */
+    public RemoveVisitor(final CopyOnWrite<V> copyOnWrite, final Consumer<Bytes> removedLocations) {
+        this.copyOnWrite = copyOnWrite;
+        this.removedLocations = removedLocations;
     }
 
     @Override
-    public Node<V> visit(BranchNode<V> branchNode, Bytes path) {
-        final Bytes leafPath = branchNode.getPath();
-        final Bytes commonPath = leafPath.commonPrefix(path);
-        if (commonPath.compareTo(leafPath) != 0) {
+    public Node<V> visit(BranchNode<V> branchNode, Bytes key) {
+        final int nodeOffset = offset;
+        final Bytes nodePath = branchNode.getPath();
+        final int commonPathLength = KeyPath.commonPrefixLength(nodePath, key, offset);
+        if (commonPathLength != nodePath.size()) {
+            return branchNode;
+        }
+        final byte childIndex = key.get(offset + commonPathLength);
+        offset += commonPathLength + 1;
+        final Node<V> child = branchNode.child(childIndex);
+        final Node<V> childNode = child.accept(this, key);
+        if (StoredNode.isUnchanged(child, childNode)) {
+            // Nothing was removed below
             return branchNode;
         }
-        final Bytes pathSuffix = path.slice(commonPath.size());
-        final byte childIndex = pathSuffix.get(0);
-        final Node<V> childNode = branchNode.child(childIndex).accept(this, pathSuffix.slice(1));
-        branchNode.replaceChild(childIndex, childNode);
-        Node<V> resultNode = maybeFlatten(branchNode);
+        final BranchNode<V> updatedNode = copyOnWrite.mutable(branchNode);
+        updatedNode.replaceChild(childIndex, childNode);
+        updatedNode.markDirty();
+        Node<V> resultNode = maybeFlatten(updatedNode, key.slice(0, nodeOffset));
         return resultNode;
     }
 
     @Override
-    public Node<V> visit(LeafNode<V> leafNode, Bytes path) {
+    public Node<V> visit(LeafNode<V> leafNode, Bytes key) {
         final Bytes nodePath = leafNode.getPath();
-        final Bytes commonPath = nodePath.commonPrefix(path);
-        if (commonPath.compareTo(nodePath) != 0) {
+        if (KeyPath.commonPrefixLength(nodePath, key, offset) != nodePath.size()) {
             return leafNode;
         }
+        removedLocations.accept(key.slice(0, offset));
         return NULL_NODE;
     }
 
     @Override
-    public Node<V> visit(NullNode<V> nullNode, Bytes path) {
+    public Node<V> visit(StemNode<V> stemNode, Bytes key) {
+        final Bytes nodePath = stemNode.getPath();
+        final int commonPathLength = KeyPath.commonPrefixLength(nodePath, key, offset);
+        if (commonPathLength != nodePath.size()) {
+            return stemNode;
+        }
+        final byte index = key.get(offset + commonPathLength);
+        if (!stemNode.hasValue(index)) {
+            return stemNode;
+        }
+        final StemNode<V> updatedNode = copyOnWrite.mutable(stemNode);
+        updatedNode.removeValue(index);
+        updatedNode.markDirty();
+        if (updatedNode.valueCount() > 1) {
+            return updatedNode;
+        }
+        // One value left => back to a single LeafNode with the whole path
+        final int onlyIndex = updatedNode.nextValueIndex(0);
+        final Bytes completePath = Bytes.concatenate(nodePath, Bytes.of(onlyIndex));
+        final LeafNode<V> leafNode = new LeafNode<V>(
+            updatedNode.getLocation(), updatedNode.getValue((byte) onlyIndex).get(), completePath);
+        leafNode.markDirty();
+        return leafNode;
+    }
+
+    @Override
+    public Node<V> visit(NullNode<V> nullNode, Bytes key) {
         return NULL_NODE;
     }
 
-    protected Node<V> maybeFlatten(BranchNode<V> branchNode) {
+    protected Node<V> maybeFlatten(BranchNode<V> branchNode, Bytes location) {
+        return flatten(branchNode, location, removedLocations);
+    }
+
+    /**
+     * Merges a branch having a single child with that child, and removes a branch left without children.
+     *
+     * @param branchNode branch from which children were removed.
+     * @param location location of the branch.
+     * @param removedLocations receives the former location of the child, which moves to the branch's location, or
+     *     the location of the removed branch.
+     * @return the only child, with the branch's path prepended, a NullNode if there is no child left, or the branch
+     *     itself if it has other children.
+     */
+    static <V> Node<V> flatten(BranchNode<V> branchNode, Bytes location, Consumer<Bytes> removedLocations) {
         final Optional<Byte> onlyChildIndex = findOnlyChild(branchNode.getChildren());
-        // Many children => return node as is
         if (!onlyChildIndex.isPresent()) {
+            // No child => remove node, such as a stem level branch whose values were all removed
+            if (hasNoChild(branchNode.getChildren())) {
+                removedLocations.accept(location);
+                return NullNode.instance();
+            }
+            // Many children => return node as is
             return branchNode;
         }
         // One child => merge with child: replace the path of the only child and return it
         final Node<V> onlyChild = branchNode.child(onlyChildIndex.get());
+        removedLocations.accept(Bytes.concatenate(location, branchNode.getPath(), Bytes.of(onlyChildIndex.get())));
         final Bytes completePath = Bytes.concatenate(branchNode.getPath(), Bytes.of(onlyChildIndex.get()), onlyChild.getPath());
         return onlyChild.replacePath(completePath);
     }
 
-    private Optional<Byte> findOnlyChild(final List<Node<V>> children) {
+    private static <V> boolean hasNoChild(final List<Node<V>> children) {
+        final Node<V> nullNode = NullNode.instance();
+        for (Node<V> child : children) {
+            if (child != nullNode) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static <V> Optional<Byte> findOnlyChild(final List<Node<V>> children) {
+        final Node<V> nullNode = NullNode.instance();
         Optional<Byte> onlyChildIndex = Optional.empty();
         for (int i = 0; i < children.size(); ++i) {
-            if (children.get(i) != NULL_NODE) {
+            if (children.get(i) != nullNode) {
                 if (onlyChildIndex.isPresent()) {
                     return Optional.empty();
                 }
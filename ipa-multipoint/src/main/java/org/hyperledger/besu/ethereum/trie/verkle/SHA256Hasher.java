@@ -2,6 +2,7 @@ package org.hyperledger.besu.ethereum.trie.verkle;
 
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
@@ -20,4 +21,44 @@ public class SHA256Hasher implements Hasher<Bytes32> {
         }
         return out;
     }
+
+    @Override
+    public Bytes32 commitRoot(Bytes32[] inputs) {
+        return commit(inputs);
+    }
+
+    @Override
+    public Bytes32 commitSparse(byte[] indices, Bytes32[] inputs) {
+        // Same as commit on the dense inputs, up to the last index
+        int size = 0;
+        for (byte index : indices) {
+            size = Math.max(size, Byte.toUnsignedInt(index) + 1);
+        }
+        Bytes32[] dense = new Bytes32[size];
+        Arrays.fill(dense, Bytes32.ZERO);
+        for (int k = 0; k < indices.length; k++) {
+            dense[Byte.toUnsignedInt(indices[k])] = inputs[k];
+        }
+        return commit(dense);
+    }
+
+    @Override
+    public Bytes32 commitRootSparse(byte[] indices, Bytes32[] inputs) {
+        return commitSparse(indices, inputs);
+    }
+
+    @Override
+    public Bytes32 groupToField(Bytes32 commitment) {
+        return commitment;
+    }
+
+    @Override
+    public boolean canUpdateCommitment() {
+        return false;
+    }
+
+    @Override
+    public Bytes32 updateCommitment(Bytes32 commitment, byte index, Bytes32 oldInput, Bytes32 newInput) {
+        throw new UnsupportedOperationException("SHA256 commitments cannot be updated incrementally.");
+    }
 }
@@ -16,7 +16,12 @@ package org.hyperledger.besu.ethereum.trie.verkle;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.SortedMap;
 
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
@@ -24,6 +29,9 @@ import org.apache.tuweni.bytes.Bytes32;
 
 public class SimpleVerkleTrie<K extends Bytes, V extends Bytes> implements VerkleTrie<K, V> {
     private Node<V> root;
+    private HashVisitor<V> hashVisitor = new HashVisitor<V>();
+    private CopyOnWrite<V> copyOnWrite = CopyOnWrite.inPlace();
+    private final List<Bytes> removedLocations = new ArrayList<>();  // stored nodes to delete on commit
 
     public SimpleVerkleTrie() {
         this.root = NullNode.instance();
@@ -33,10 +41,33 @@ public class SimpleVerkleTrie<K extends Bytes, V extends Bytes> implements Verkl
         this.root = root;
     }
 
+    // Hashing in parallel uses e.g. a ParallelHashVisitor
+    public void setHashVisitor(final HashVisitor<V> hashVisitor) {
+        checkNotNull(hashVisitor);
+        this.hashVisitor = hashVisitor;
+    }
+
     public Node<V> getRoot() {
         return root;
     }
 
+    /**
+     * Version of the trie that later updates, of either trie, do not affect.
+     *
+     * Both tries share their nodes, and copy them on their first update from then on.
+     * Stored nodes that are not loaded yet are read from storage when visited, so a snapshot of a stored trie
+     * sees the content of the storage at that time.
+     *
+     * @return trie with the current content.
+     */
+    public SimpleVerkleTrie<K, V> snapshot() {
+        copyOnWrite = CopyOnWrite.copying();
+        SimpleVerkleTrie<K, V> snapshot = new SimpleVerkleTrie<K, V>(root);
+        snapshot.hashVisitor = hashVisitor;
+        snapshot.copyOnWrite = CopyOnWrite.copying();
+        return snapshot;
+    }
+
     @Override
     public Optional<V> get(final K key) {
         checkNotNull(key);
@@ -47,18 +78,51 @@ public class SimpleVerkleTrie<K extends Bytes, V extends Bytes> implements Verkl
     public void put(final K key, final V value) {
         checkNotNull(key);
         checkNotNull(value);
-        this.root = root.accept(new PutVisitor<V>(value), key);
+        this.root = root.accept(new PutVisitor<V>(value, copyOnWrite), key);
     }
 
     @Override
     public void remove(final K key) {
         checkNotNull(key);
-        this.root = root.accept(new RemoveVisitor<V>(), key);
+        this.root = root.accept(new RemoveVisitor<V>(copyOnWrite, removedLocations::add), key);
+    }
+
+    /**
+     * Applies a batch of updates with one traversal per stem.
+     *
+     * Sorted keys sharing a stem are consecutive, and are updated together by a StemUpdateVisitor.
+     */
+    @Override
+    public void putAll(final SortedMap<K, Optional<V>> updates) {
+        checkNotNull(updates);
+        // Stored nodes on the updated paths are loaded a level at a time, siblings together
+        StoredNode.loadPaths(root, updates.keySet());
+        K stemKey = null;
+        Map<Byte, Optional<V>> stemUpdates = new LinkedHashMap<>();
+        for (Map.Entry<K, Optional<V>> update : updates.entrySet()) {
+            final K key = checkNotNull(update.getKey());
+            checkNotNull(update.getValue());
+            if (key.size() != Bytes32.SIZE) {
+                update.getValue().ifPresentOrElse(value -> put(key, value), () -> remove(key));
+                continue;
+            }
+            if (stemKey != null && !stemKey.slice(0, Bytes32.SIZE - 1).equals(key.slice(0, Bytes32.SIZE - 1))) {
+                this.root = root.accept(
+                    new StemUpdateVisitor<V>(stemUpdates, copyOnWrite, removedLocations::add), stemKey);
+                stemUpdates = new LinkedHashMap<>();
+            }
+            stemKey = key;
+            stemUpdates.put(key.get(Bytes32.SIZE - 1), update.getValue());
+        }
+        if (stemKey != null) {
+            this.root = root.accept(
+                new StemUpdateVisitor<V>(stemUpdates, copyOnWrite, removedLocations::add), stemKey);
+        }
     }
 
     @Override
     public Bytes32 getRootHash() {
-        root = root.accept(new HashVisitor<V>(), root.getPath());
+        hash();
         return root.getHash().get();
     }
 
@@ -69,7 +133,32 @@ public class SimpleVerkleTrie<K extends Bytes, V extends Bytes> implements Verkl
 
     @Override
     public void commit(final NodeUpdater nodeUpdater) {
-        root = root.accept(new HashVisitor<V>(), root.getPath());
-        root = root.accept(new CommitVisitor<V>(nodeUpdater), Bytes.EMPTY);
+        root = copyOnWrite.ownStale(root, hashVisitor::needsHash);
+        // Nodes reach the updater in one batch sorted by location, once all of them are encoded
+        final NodeWriteBatch batch = new NodeWriteBatch();
+        // Deleted first, so that locations where nodes were stored again keep them
+        removedLocations.forEach(batch::delete);
+        removedLocations.clear();
+        root = hashVisitor.commit(root, Bytes.EMPTY, batch);
+        copyOnWrite.release();
+        batch.flush(nodeUpdater);
+        releaseStoredNodes();
+    }
+
+    /**
+     * Releases the stored nodes that visits loaded, they are loaded again from storage when next visited.
+     *
+     * Updated nodes are kept, as they replaced the placeholders they were loaded through. Called after each commit.
+     */
+    public void releaseStoredNodes() {
+        StoredNode.unloadAll(root);
+    }
+
+    private void hash() {
+        // Hashing puts hashed children back into stale branches, which must not be shared
+        root = copyOnWrite.ownStale(root, hashVisitor::needsHash);
+        root = root.accept(hashVisitor, root.getPath());
+        // Updated nodes were all replaced by their hashed version
+        copyOnWrite.release();
     }
 }
\ No newline at end of file
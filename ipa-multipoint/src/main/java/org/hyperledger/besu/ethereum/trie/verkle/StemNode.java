@@ -0,0 +1,281 @@
+/*
+ * Copyright Hyperledger Besu Contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.besu.ethereum.trie.verkle;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+
+
+/**
+ * Values sharing a 31 bytes stem, held in a single node.
+ *
+ * Takes the place of a BranchNode whose 256 children would be leaves, and hashes the same.
+ * Values are kept in a 256 slots array along with a bitmap of the present ones,
+ * and are persisted with the node as a single record.
+ */
+public class StemNode<V> implements Node<V> {
+    private final Optional<Bytes> location;  // Location in the tree
+    private final Bytes path;  // Extension path
+    private final Bytes stem;  // Common 31 bytes of the keys
+    private final Optional<Bytes32> hash;
+    private final Optional<Bytes32> leftCommitment;  // commitment to the values at index 0-127
+    private final Optional<Bytes32> rightCommitment;  // commitment to the values at index 128-255
+    private final Object[] values;
+    private final long[] bitmap;  // bit i is set if value i is present
+    private final Map<Byte, Optional<V>> previousValues;  // values as they were when the commitments were computed
+    private Optional<Bytes> encodedValue = Optional.empty();
+
+    private boolean dirty = true;  // not persisted
+
+    public StemNode(final Optional<Bytes> location, final Bytes stem, final Bytes path) {
+        this(location, stem, path, Optional.empty(), Optional.empty(), Optional.empty(),
+            new Object[maxChild()], new long[maxChild() / 64], new HashMap<>());
+    }
+
+    public StemNode(
+            final Bytes location,
+            final Bytes stem,
+            final Bytes path,
+            final Bytes32 hash,
+            final Bytes32 leftCommitment,
+            final Bytes32 rightCommitment) {
+        this(Optional.of(location), stem, path, Optional.of(hash), Optional.of(leftCommitment),
+            Optional.of(rightCommitment), new Object[maxChild()], new long[maxChild() / 64], new HashMap<>());
+    }
+
+    private StemNode(
+            final Optional<Bytes> location,
+            final Bytes stem,
+            final Bytes path,
+            final Optional<Bytes32> hash,
+            final Optional<Bytes32> leftCommitment,
+            final Optional<Bytes32> rightCommitment,
+            final Object[] values,
+            final long[] bitmap,
+            final Map<Byte, Optional<V>> previousValues) {
+        this.location = location;
+        this.stem = stem;
+        this.path = path;
+        this.hash = hash;
+        this.leftCommitment = leftCommitment;
+        this.rightCommitment = rightCommitment;
+        this.values = values;
+        this.bitmap = bitmap;
+        this.previousValues = previousValues;
+    }
+
+    public static int maxChild() {
+        return 256;
+    }
+
+    @Override
+    public Node<V> accept(final PathNodeVisitor<V> visitor, final Bytes path) {
+        return visitor.visit(this, path);
+    }
+
+    @Override
+    public Node<V> accept(final NodeVisitor<V> visitor) {
+        return visitor.visit(this);
+    }
+
+    @SuppressWarnings("unchecked")
+    public Optional<V> getValue(final byte index) {
+        return Optional.ofNullable((V) values[Byte.toUnsignedInt(index)]);
+    }
+
+    public boolean hasValue(final byte index) {
+        int i = Byte.toUnsignedInt(index);
+        return (bitmap[i / 64] & (1L << (i % 64))) != 0;
+    }
+
+    public void setValue(final byte index, final V value) {
+        // Keep the first replaced value, so commitments can be updated from it
+        previousValues.putIfAbsent(index, getValue(index));
+        int i = Byte.toUnsignedInt(index);
+        values[i] = value;
+        if (value == null) {
+            bitmap[i / 64] &= ~(1L << (i % 64));
+        } else {
+            bitmap[i / 64] |= 1L << (i % 64);
+        }
+        encodedValue = Optional.empty();
+    }
+
+    public void removeValue(final byte index) {
+        setValue(index, null);
+    }
+
+    public int valueCount() {
+        int count = 0;
+        for (long word : bitmap) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Index of the next present value.
+     *
+     * @param from first index to look at, from 0 to 256.
+     * @return index of the first present value from there on, or -1 if there is none.
+     */
+    public int nextValueIndex(final int from) {
+        for (int i = from; i < maxChild(); i++) {
+            long word = bitmap[i / 64] >>> (i % 64);
+            if (word != 0) {
+                return i + Long.numberOfTrailingZeros(word);
+            }
+            i = (i / 64) * 64 + 63;
+        }
+        return -1;
+    }
+
+    /**
+     * Values replaced since the commitments were computed, as they were at that time.
+     *
+     * @return previous values by index.
+     */
+    public Map<Byte, Optional<V>> getPreviousValues() {
+        return previousValues;
+    }
+
+    /**
+     * Value at index, as a leaf without path.
+     *
+     * @param index index of the value in the stem.
+     * @return LeafNode holding the value or NullNode if there is none.
+     */
+    public Node<V> child(final byte index) {
+        Optional<V> value = getValue(index);
+        if (value.isEmpty()) {
+            return NullNode.instance();
+        }
+        return new LeafNode<V>(value.get(), Bytes.EMPTY);
+    }
+
+    @Override
+    public List<Node<V>> getChildren() {
+        List<Node<V>> children = new ArrayList<>(maxChild());
+        for (int i = 0; i < maxChild(); i++) {
+            children.add(child((byte) i));
+        }
+        return children;
+    }
+
+    public Bytes getStem() {
+        return stem;
+    }
+
+    @Override
+    public Optional<Bytes> getLocation() {
+        return location;
+    }
+
+    @Override
+    public Bytes getPath() {
+        return path;
+    }
+
+    @Override
+    public Optional<Bytes32> getHash() {
+        return hash;
+    }
+
+    public Optional<Bytes32> getLeftCommitment() {
+        return leftCommitment;
+    }
+
+    public Optional<Bytes32> getRightCommitment() {
+        return rightCommitment;
+    }
+
+    public Node<V> replaceHash(Bytes32 hash, Bytes32 leftCommitment, Bytes32 rightCommitment) {
+        return new StemNode<V>(location, stem, path, Optional.of(hash), Optional.of(leftCommitment),
+            Optional.of(rightCommitment), values, bitmap, new HashMap<>());
+    }
+
+    @Override
+    public Node<V> replacePath(final Bytes path) {
+        // Values are unchanged, so are the commitments to them
+        return new StemNode<V>(location, stem, path, Optional.empty(), leftCommitment, rightCommitment,
+            values, bitmap, new HashMap<>(previousValues));
+    }
+
+    /**
+     * Copy of the node, that can be updated without affecting this one.
+     *
+     * @return node with the same content and its own values.
+     */
+    public StemNode<V> copy() {
+        StemNode<V> copy = new StemNode<V>(location, stem, path, hash, leftCommitment, rightCommitment,
+            values.clone(), bitmap.clone(), new HashMap<>(previousValues));
+        copy.encodedValue = encodedValue;
+        copy.dirty = dirty;
+        return copy;
+    }
+
+    @Override
+    public Bytes getEncodedValue() {
+        if (encodedValue.isPresent()) {
+            return encodedValue.get();
+        }
+        byte[] bitmapBytes = new byte[maxChild() / 8];
+        for (int i = nextValueIndex(0); i >= 0; i = nextValueIndex(i + 1)) {
+            bitmapBytes[i / 8] |= (byte) (0x80 >>> (i % 8));
+        }
+        // Present values follow, in index order
+        List<Bytes> presentValues = new ArrayList<>(valueCount());
+        for (int i = nextValueIndex(0); i >= 0; i = nextValueIndex(i + 1)) {
+            presentValues.add((Bytes) values[i]);
+        }
+        Bytes result = NodeEncoding.encodeStem(
+            hash.get(), path, Bytes32.wrap(bitmapBytes), leftCommitment.get(), rightCommitment.get(), stem,
+            presentValues);
+        this.encodedValue = Optional.of(result);
+        return result;
+    }
+
+    @Override
+    public void markDirty() {
+        dirty = true;
+    }
+
+    @Override
+    public void markClean() {
+        dirty = false;
+    }
+
+    @Override
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    @Override
+    public String print() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("Stem:");
+        for (int i = nextValueIndex(0); i >= 0; i = nextValueIndex(i + 1)) {
+            final String label = "[" + Integer.toHexString(i) + "] ";
+            builder.append("\n\t").append(label).append("Leaf:").append(values[i]);
+        }
+        return builder.toString();
+    }
+}
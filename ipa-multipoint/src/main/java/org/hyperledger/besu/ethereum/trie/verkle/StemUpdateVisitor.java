@@ -0,0 +1,191 @@
+/*
+ * Copyright Hyperledger Besu Contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.besu.ethereum.trie.verkle;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import org.apache.tuweni.bytes.Bytes;
+
+
+/**
+ * Puts and removes values sharing a stem, in a single traversal.
+ *
+ * Updates are given by index in the stem, an empty value removes the key.
+ * The path given to visit is any of the keys of the stem, the visitor keeps the offset of the visited node in it.
+ */
+public class StemUpdateVisitor<V> implements PathNodeVisitor<V> {
+    private final Node<V> NULL_NODE = NullNode.instance();
+    private final Map<Byte, Optional<V>> updates;
+    private final boolean hasPuts;
+    private final boolean hasRemovals;
+    private final CopyOnWrite<V> copyOnWrite;
+    private final Consumer<Bytes> removedLocations;
+    private int offset = 0;
+
+    public StemUpdateVisitor(final Map<Byte, Optional<V>> updates) {
+        this(updates, CopyOnWrite.inPlace());
+    }
+
+    public StemUpdateVisitor(final Map<Byte, Optional<V>> updates, final CopyOnWrite<V> copyOnWrite) {
+        this(updates, copyOnWrite, location -> {});
+    }
+
+    /**
+     * @param updates values by index in the stem.
+     * @param copyOnWrite nodes that may be modified in place.
+     * @param removedLocations receives the locations left empty, whose stored nodes are to be deleted.
+     */
+    public StemUpdateVisitor(
+            final Map<Byte, Optional<V>> updates,
+            final CopyOnWrite<V> copyOnWrite,
+            final Consumer<Bytes> removedLocations) {
+        this.updates = updates;
+        this.copyOnWrite = copyOnWrite;
+        this.removedLocations = removedLocations;
+        this.hasPuts = updates.values().stream().anyMatch(Optional::isPresent);
+        this.hasRemovals = updates.values().stream().anyMatch(Optional::isEmpty);
+    }
+
+    @Override
+    public Node<V> visit(final BranchNode<V> branchNode, final Bytes key) {
+        final int nodeOffset = offset;
+        final Bytes nodePath = branchNode.getPath();
+        final int commonPathLength = KeyPath.commonPrefixLength(nodePath, key, offset);
+        if (commonPathLength != nodePath.size()) {
+            return hasPuts ? insertNewBranching(branchNode, commonPathLength, key) : branchNode;
+        }
+        if (offset + commonPathLength == key.size() - 1) {
+            // Stem level branch: children are the values
+            final BranchNode<V> updatedNode = copyOnWrite.mutable(branchNode);
+            for (Map.Entry<Byte, Optional<V>> update : updates.entrySet()) {
+                final Node<V> child = update.getValue().isPresent()
+                    ? new LeafNode<V>(update.getValue().get(), Bytes.EMPTY)
+                    : NULL_NODE;
+                if (child == NULL_NODE && updatedNode.child(update.getKey()) != NULL_NODE) {
+                    // Values of a stem level branch are leaves of their own
+                    removedLocations.accept(Bytes.concatenate(key.slice(0, key.size() - 1), Bytes.of(update.getKey())));
+                }
+                updatedNode.replaceChild(update.getKey(), child);
+            }
+            updatedNode.markDirty();
+            return flattenIfRemoved(updatedNode, key.slice(0, nodeOffset));
+        }
+        final byte childIndex = key.get(offset + commonPathLength);
+        offset += commonPathLength + 1;
+        final Node<V> child = branchNode.child(childIndex);
+        final Node<V> updatedChild = child.accept(this, key);
+        if (StoredNode.isUnchanged(child, updatedChild)) {
+            // Only removals of missing keys
+            return branchNode;
+        }
+        final BranchNode<V> updatedNode = copyOnWrite.mutable(branchNode);
+        updatedNode.replaceChild(childIndex, updatedChild);
+        updatedNode.markDirty();
+        return flattenIfRemoved(updatedNode, key.slice(0, nodeOffset));
+    }
+
+    @Override
+    public Node<V> visit(final LeafNode<V> leafNode, final Bytes key) {
+        final Bytes nodePath = leafNode.getPath();
+        final int commonPathLength = KeyPath.commonPrefixLength(nodePath, key, offset);
+        if (commonPathLength >= nodePath.size() - 1) {
+            // Same stem: the leaf's value joins the updated ones
+            final int stemPathLength = nodePath.size() - 1;
+            if (!hasPuts) {
+                if (!updates.containsKey(nodePath.get(stemPathLength))) {
+                    return leafNode;
+                }
+                removedLocations.accept(key.slice(0, offset));
+                return NULL_NODE;
+            }
+            final StemNode<V> stemNode = copyOnWrite.own(new StemNode<V>(
+                leafNode.getLocation(), key.slice(0, offset + stemPathLength), nodePath.slice(0, stemPathLength)));
+            stemNode.setValue(nodePath.get(stemPathLength), leafNode.getValue().get());
+            return update(stemNode, key);
+        }
+        return hasPuts ? insertNewBranching(leafNode, commonPathLength, key) : leafNode;
+    }
+
+    @Override
+    public Node<V> visit(final StemNode<V> stemNode, final Bytes key) {
+        final Bytes nodePath = stemNode.getPath();
+        final int commonPathLength = KeyPath.commonPrefixLength(nodePath, key, offset);
+        if (commonPathLength != nodePath.size()) {
+            return hasPuts ? insertNewBranching(stemNode, commonPathLength, key) : stemNode;
+        }
+        return update(stemNode, key);
+    }
+
+    @Override
+    public Node<V> visit(final NullNode<V> nullNode, final Bytes key) {
+        if (!hasPuts) {
+            return NULL_NODE;
+        }
+        final int stemLength = key.size() - 1;
+        return update(copyOnWrite.own(
+            new StemNode<V>(Optional.empty(), key.slice(0, stemLength), key.slice(offset, stemLength - offset))), key);
+    }
+
+    private Node<V> insertNewBranching(final Node<V> node, final int commonPathLength, final Bytes key) {
+        final Bytes nodePath = node.getPath();
+        final Node<V> updatedNode = node.replacePath(nodePath.slice(commonPathLength + 1));
+        final BranchNode<V> newBranchNode =
+            copyOnWrite.own(new BranchNode<V>(node.getLocation(), nodePath.slice(0, commonPathLength)));
+        newBranchNode.replaceChild(nodePath.get(commonPathLength), updatedNode);
+        final byte childIndex = key.get(offset + commonPathLength);
+        offset += commonPathLength + 1;
+        newBranchNode.replaceChild(childIndex, NULL_NODE.accept(this, key));
+        return newBranchNode;
+    }
+
+    private Node<V> flattenIfRemoved(final BranchNode<V> branchNode, final Bytes location) {
+        return hasRemovals ? RemoveVisitor.flatten(branchNode, location, removedLocations) : branchNode;
+    }
+
+    private Node<V> update(final StemNode<V> node, final Bytes key) {
+        StemNode<V> stemNode = node;
+        boolean updated = false;
+        for (Map.Entry<Byte, Optional<V>> update : updates.entrySet()) {
+            if (update.getValue().isPresent() || stemNode.hasValue(update.getKey())) {
+                if (!updated) {
+                    stemNode = copyOnWrite.mutable(stemNode);
+                    updated = true;
+                }
+                stemNode.setValue(update.getKey(), update.getValue().orElse(null));
+            }
+        }
+        if (!updated) {
+            return stemNode;
+        }
+        stemNode.markDirty();
+        final int valueCount = stemNode.valueCount();
+        if (valueCount == 0) {
+            removedLocations.accept(key.slice(0, offset));
+            return NULL_NODE;
+        }
+        if (valueCount > 1) {
+            return stemNode;
+        }
+        // A single value is held by a LeafNode with the whole path, as PutVisitor does
+        final int onlyIndex = stemNode.nextValueIndex(0);
+        final Bytes completePath = Bytes.concatenate(stemNode.getPath(), Bytes.of(onlyIndex));
+        final LeafNode<V> leafNode = new LeafNode<V>(
+            stemNode.getLocation(), stemNode.getValue((byte) onlyIndex).get(), completePath);
+        leafNode.markDirty();
+        return leafNode;
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright Hyperledger Besu Contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.besu.ethereum.trie.verkle;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+
+/**
+ * Placeholder for a persisted node that is only loaded when a visitor descends into it.
+ *
+ * Visiting a StoredNode visits the loaded node, so updating visitors replace the placeholder by the loaded node.
+ * A placeholder still in the trie thus holds an unchanged stored subtree, which can be released and loaded again.
+ */
+public class StoredNode<V> implements Node<V> {
+    private final NodeFactory<V> nodeFactory;
+    private final Bytes location;
+    private final Optional<Bytes32> hash;
+    private volatile Node<V> loaded;  // safely published to concurrent readers
+
+    public StoredNode(final NodeFactory<V> nodeFactory, final Bytes location) {
+        this(nodeFactory, location, Optional.empty());
+    }
+
+    /**
+     * Placeholder for a persisted node whose hash is known, so that hashing its parent does not load it.
+     *
+     * @param nodeFactory factory loading the node.
+     * @param location location of the node.
+     * @param hash hash of the node.
+     */
+    public StoredNode(final NodeFactory<V> nodeFactory, final Bytes location, final Bytes32 hash) {
+        this(nodeFactory, location, Optional.of(hash));
+    }
+
+    private StoredNode(final NodeFactory<V> nodeFactory, final Bytes location, final Optional<Bytes32> hash) {
+        this.nodeFactory = nodeFactory;
+        this.location = location;
+        this.hash = hash;
+    }
+
+    @Override
+    public Node<V> accept(final PathNodeVisitor<V> visitor, final Bytes path) {
+        return load().accept(visitor, path);
+    }
+
+    @Override
+    public Node<V> accept(final NodeVisitor<V> visitor) {
+        return load().accept(visitor);
+    }
+
+    @Override
+    public Bytes getPath() {
+        return load().getPath();
+    }
+
+    @Override
+    public Optional<Bytes> getLocation() {
+        return Optional.of(location);
+    }
+
+    @Override
+    public Optional<V> getValue() {
+        return load().getValue();
+    }
+
+    @Override
+    public Optional<Bytes32> getHash() {
+        if (hash.isPresent()) {
+            return hash;
+        }
+        return load().getHash();
+    }
+
+    @Override
+    public Node<V> replacePath(final Bytes path) {
+        return load().replacePath(path);
+    }
+
+    @Override
+    public Bytes getEncodedValue() {
+        return load().getEncodedValue();
+    }
+
+    @Override
+    public List<Node<V>> getChildren() {
+        return load().getChildren();
+    }
+
+    @Override
+    public void markDirty() {
+        throw new IllegalStateException("A stored node cannot be dirty since it is loaded from storage");
+    }
+
+    @Override
+    public void markClean() {
+        // do nothing
+    }
+
+    @Override
+    public boolean isDirty() {
+        return false;
+    }
+
+    @Override
+    public String print() {
+        return load().print();
+    }
+
+    /**
+     * Is the persisted node currently held in memory?
+     *
+     * @return True if the node was loaded and not released since.
+     */
+    public boolean isLoaded() {
+        return loaded != null;
+    }
+
+    /** Releases the loaded node, it will be loaded again on the next visit. */
+    public void unload() {
+        loaded = null;
+    }
+
+    /**
+     * Releases the nodes loaded through the placeholders of a trie.
+     *
+     * Only the nodes held in memory are walked, placeholders are released without visiting what they loaded.
+     *
+     * @param node root of the trie.
+     */
+    static <V> void unloadAll(final Node<V> node) {
+        if (node instanceof StoredNode) {
+            ((StoredNode<V>) node).unload();
+        } else if (node instanceof BranchNode) {
+            for (Node<V> child : node.getChildren()) {
+                unloadAll(child);
+            }
+        }
+    }
+
+    /**
+     * Did an updating visitor leave a child unchanged?
+     *
+     * Visiting a StoredNode returns the loaded node, so an unchanged stored child comes back as that node.
+     *
+     * @param child child given to the visitor.
+     * @param visited node returned by the visitor.
+     * @return True if the visitor changed nothing.
+     */
+    static <V> boolean isUnchanged(final Node<V> child, final Node<V> visited) {
+        if (visited.isDirty()) {
+            return false;
+        }
+        return visited == child || (child instanceof StoredNode && visited == ((StoredNode<V>) child).loaded);
+    }
+
+    /**
+     * Loads the placeholders among nodes that are not loaded yet, with one retrieveAll per factory so that the
+     * loads of siblings overlap.
+     *
+     * @param nodes nodes about to be read, such as the children of a branch.
+     */
+    static <V> void loadAll(final Collection<Node<V>> nodes) {
+        load(nodes, false);
+    }
+
+    /**
+     * Same as loadAll, skipping the placeholders whose hash is known.
+     *
+     * @param nodes nodes whose hashes are about to be read.
+     */
+    static <V> void loadHashes(final Collection<Node<V>> nodes) {
+        load(nodes, true);
+    }
+
+    /**
+     * Loads the placeholders on the paths from a node to keys, one level at a time with loadAll.
+     *
+     * @param root node at the start of the keys.
+     * @param keys keys about to be updated, in order.
+     */
+    static <V> void loadPaths(final Node<V> root, final Collection<? extends Bytes> keys) {
+        List<PathLoad<V>> level = List.of(new PathLoad<>(root, 0, new ArrayList<>(keys)));
+        while (!level.isEmpty()) {
+            final List<Node<V>> nodes = new ArrayList<>(level.size());
+            for (PathLoad<V> pathLoad : level) {
+                nodes.add(pathLoad.node);
+            }
+            loadAll(nodes);
+            final List<PathLoad<V>> next = new ArrayList<>();
+            for (PathLoad<V> pathLoad : level) {
+                final Node<V> node = pathLoad.node instanceof StoredNode
+                    ? ((StoredNode<V>) pathLoad.node).load()
+                    : pathLoad.node;
+                if (!(node instanceof BranchNode)) {
+                    continue;
+                }
+                final BranchNode<V> branchNode = (BranchNode<V>) node;
+                final Bytes path = branchNode.getPath();
+                final int childOffset = pathLoad.offset + path.size();
+                final Map<Byte, List<Bytes>> childKeys = new LinkedHashMap<>();
+                for (Bytes key : pathLoad.keys) {
+                    if (childOffset < key.size() && KeyPath.commonPrefixLength(path, key, pathLoad.offset) == path.size()) {
+                        childKeys.computeIfAbsent(key.get(childOffset), index -> new ArrayList<>()).add(key);
+                    }
+                }
+                for (Map.Entry<Byte, List<Bytes>> entry : childKeys.entrySet()) {
+                    final Node<V> child = branchNode.child(entry.getKey());
+                    if (child instanceof StoredNode || child instanceof BranchNode) {
+                        next.add(new PathLoad<>(child, childOffset + 1, entry.getValue()));
+                    }
+                }
+            }
+            level = next;
+        }
+    }
+
+    // A node on the paths to keys, which start at offset in the keys
+    private static final class PathLoad<V> {
+        final Node<V> node;
+        final int offset;
+        final List<Bytes> keys;
+
+        PathLoad(final Node<V> node, final int offset, final List<Bytes> keys) {
+            this.node = node;
+            this.offset = offset;
+            this.keys = keys;
+        }
+    }
+
+    private static <V> void load(final Collection<Node<V>> nodes, final boolean onlyWithoutHash) {
+        final Map<NodeFactory<V>, List<StoredNode<V>>> byFactory = new IdentityHashMap<>();
+        for (Node<V> node : nodes) {
+            if (node instanceof StoredNode) {
+                final StoredNode<V> storedNode = (StoredNode<V>) node;
+                if (!storedNode.isLoaded() && !(onlyWithoutHash && storedNode.hash.isPresent())) {
+                    byFactory.computeIfAbsent(storedNode.nodeFactory, factory -> new ArrayList<>()).add(storedNode);
+                }
+            }
+        }
+        for (Map.Entry<NodeFactory<V>, List<StoredNode<V>>> entry : byFactory.entrySet()) {
+            final List<Bytes> locations = new ArrayList<>(entry.getValue().size());
+            for (StoredNode<V> storedNode : entry.getValue()) {
+                locations.add(storedNode.location);
+            }
+            final List<Optional<Node<V>>> retrieved = entry.getKey().retrieveAll(locations);
+            for (int i = 0; i < locations.size(); i++) {
+                final StoredNode<V> storedNode = entry.getValue().get(i);
+                storedNode.loaded = retrieved.get(i).orElseThrow(() -> missing(storedNode.location));
+            }
+        }
+    }
+
+    private Node<V> load() {
+        Node<V> node = loaded;
+        if (node == null) {
+            // Concurrent readers may both load the node, either one is kept
+            node = nodeFactory.retrieve(location, null).orElseThrow(() -> missing(location));
+            loaded = node;
+        }
+        return node;
+    }
+
+    // Placeholders are only made for the children a stored parent has
+    private static IllegalStateException missing(final Bytes location) {
+        return new IllegalStateException("Missing stored node at location " + location);
+    }
+}
@@ -1,30 +1,143 @@
 package org.hyperledger.besu.ethereum.trie.verkle;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.Function;
 
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
-import org.apache.tuweni.rlp.RLP;
 
 public class StoredNodeFactory<V> implements NodeFactory<V>{
     private NodeLoader nodeLoader;
     private final Function<Bytes, V> valueDeserializer;
+    private final Optional<NodeCache> nodeCache;
 
     public StoredNodeFactory(NodeLoader nodeLoader, Function<Bytes, V> valueDeserializer) {
+        this(nodeLoader, valueDeserializer, Optional.empty());
+    }
+
+    /**
+     * @param nodeLoader loader of the stored nodes.
+     * @param valueDeserializer deserializer of the leaf values.
+     * @param nodeCache cache of decoded records, checked before the loader.
+     */
+    public StoredNodeFactory(NodeLoader nodeLoader, Function<Bytes, V> valueDeserializer, NodeCache nodeCache) {
+        this(nodeLoader, valueDeserializer, Optional.of(nodeCache));
+    }
+
+    private StoredNodeFactory(
+            NodeLoader nodeLoader, Function<Bytes, V> valueDeserializer, Optional<NodeCache> nodeCache) {
         this.nodeLoader = nodeLoader;
         this.valueDeserializer = valueDeserializer;
+        this.nodeCache = nodeCache;
     }
 
     public Optional<Node<V>> retrieve(final Bytes location, final Bytes32 hash) {
-        Optional<Bytes> optionalEncodedValues = nodeLoader.getNode(location, hash);
-        if (optionalEncodedValues.isEmpty()) {
-            return Optional.empty();
+        return loadRecord(location, hash).flatMap(values -> create(location, values));
+    }
+
+    /**
+     * Retrieves nodes with one NodeLoader batch, whose loads overlap with an asynchronous loader.
+     */
+    @Override
+    public List<Optional<Node<V>>> retrieveAll(final List<Bytes> locations) {
+        List<Optional<List<Bytes>>> records = loadRecords(locations);
+        List<Optional<Node<V>>> nodes = new ArrayList<>(locations.size());
+        for (int i = 0; i < locations.size(); i++) {
+            Bytes location = locations.get(i);
+            nodes.add(records.get(i).flatMap(values -> create(location, values)));
+        }
+        return nodes;
+    }
+
+    /**
+     * Loads in bulk the nodes on the paths from the root to the given keys, so that visiting them later
+     * is served by the cache.
+     *
+     * Nodes are loaded level by level, with one NodeLoader batch per level.
+     *
+     * @param keys keys about to be visited, such as the ones touched by a block.
+     */
+    public void prefetch(final Collection<? extends Bytes> keys) {
+        if (nodeCache.isEmpty()) {
+            throw new IllegalStateException("Prefetching requires a node cache");
+        }
+        Map<Bytes, List<Bytes>> frontier = new LinkedHashMap<>();
+        frontier.put(Bytes.EMPTY, new ArrayList<>(keys));
+        while (!frontier.isEmpty()) {
+            List<Bytes> locations = new ArrayList<>(frontier.keySet());
+            List<Optional<List<Bytes>>> records = loadRecords(locations);
+            Map<Bytes, List<Bytes>> next = new LinkedHashMap<>();
+            for (int i = 0; i < locations.size(); i++) {
+                if (records.get(i).isPresent()) {
+                    prefetchChildren(locations.get(i), records.get(i).get(), frontier.get(locations.get(i)), next);
+                }
+            }
+            frontier = next;
+        }
+    }
+
+    private void prefetchChildren(
+            final Bytes location, final List<Bytes> values, final List<Bytes> keys, final Map<Bytes, List<Bytes>> next) {
+        if (values.get(0).isEmpty() || values.size() > 5) {  // NullNode, LeafNode or StemNode
+            return;
+        }
+        Bytes path = values.get(1);
+        int depth = location.size() + path.size();
+        Optional<Bytes32> childrenBitmap = values.size() > 2 ? Optional.of(Bytes32.wrap(values.get(2))) : Optional.empty();
+        for (Bytes key : keys) {
+            if (depth >= key.size() || KeyPath.commonPrefixLength(path, key, location.size()) < path.size()) {
+                continue;
+            }
+            int index = Byte.toUnsignedInt(key.get(depth));
+            if (childrenBitmap.isPresent() && (childrenBitmap.get().get(index / 8) & (0x80 >>> (index % 8))) == 0) {
+                continue;
+            }
+            next.computeIfAbsent(Bytes.concatenate(location, path, Bytes.of(index)), k -> new ArrayList<>()).add(key);
+        }
+    }
+
+    private Optional<List<Bytes>> loadRecord(final Bytes location, final Bytes32 hash) {
+        Optional<List<Bytes>> optionalValues = nodeCache.flatMap(cache -> cache.get(location));
+        if (optionalValues.isEmpty()) {
+            optionalValues = nodeLoader.getNode(location, hash).map(NodeEncoding::decode);
+            optionalValues.ifPresent(values -> nodeCache.ifPresent(cache -> cache.put(location, values)));
+        }
+        return optionalValues;
+    }
+
+    private List<Optional<List<Bytes>>> loadRecords(final List<Bytes> locations) {
+        List<Optional<List<Bytes>>> records = new ArrayList<>(locations.size());
+        List<Bytes> missing = new ArrayList<>();
+        for (Bytes location : locations) {
+            Optional<List<Bytes>> cached = nodeCache.flatMap(cache -> cache.get(location));
+            records.add(cached);
+            if (cached.isEmpty()) {
+                missing.add(location);
+            }
+        }
+        if (missing.isEmpty()) {
+            return records;
         }
-        Bytes encodedValues = optionalEncodedValues.get();
-        List<Bytes> values = RLP.decodeToList(encodedValues, reader -> reader.readValue().copy());
+        // Records not in the cache are loaded in a single batch
+        Iterator<Optional<Bytes>> loaded = nodeLoader.getNodes(missing).iterator();
+        for (int i = 0; i < records.size(); i++) {
+            if (records.get(i).isEmpty()) {
+                Bytes location = locations.get(i);
+                Optional<List<Bytes>> values = loaded.next().map(NodeEncoding::decode);
+                values.ifPresent(record -> nodeCache.ifPresent(cache -> cache.put(location, record)));
+                records.set(i, values);
+            }
+        }
+        return records;
+    }
+
+    private Optional<Node<V>> create(final Bytes location, final List<Bytes> values) {
         Bytes hashOrEmpty = values.get(0);
         if (hashOrEmpty.isEmpty() && values.size() == 1) {  // NullNode
             return Optional.of(NullNode.instance()); 
@@ -32,11 +145,19 @@ public class StoredNodeFactory<V> implements NodeFactory<V>{
         Bytes path = (Bytes) values.get(1);
         if (hashOrEmpty.isEmpty() && values.size() > 1) {  // LeafNode
             V value = valueDeserializer.apply((Bytes) values.get(2));
-            return Optional.of(createLeafNode(location, path, value));
+            Optional<Bytes32> leafHash = values.size() > 3 ? Optional.of(Bytes32.wrap(values.get(3))) : Optional.empty();
+            return Optional.of(createLeafNode(location, path, value, leafHash));
         }
         if (!hashOrEmpty.isEmpty()) {  // BranchNode
-            Bytes32 savedHash = (Bytes32) hashOrEmpty;
-            return Optional.of(createBranchNode(location, savedHash, path));
+            Bytes32 savedHash = Bytes32.wrap(hashOrEmpty);
+            if (values.size() == 2) {  // No children bitmap: load all children
+                return Optional.of(createBranchNode(location, savedHash, path));
+            }
+            Bytes32 childrenBitmap = Bytes32.wrap(values.get(2));
+            if (values.size() > 5) {  // StemNode: commitments, stem, then values
+                return Optional.of(createStemNode(location, savedHash, path, childrenBitmap, values.subList(3, values.size())));
+            }
+            return Optional.of(createBranchNode(location, savedHash, path, childrenBitmap, values.subList(3, values.size())));
         }
         return Optional.empty();  // should not be here.
     }
@@ -44,15 +165,74 @@ public class StoredNodeFactory<V> implements NodeFactory<V>{
     protected BranchNode<V> createBranchNode(Bytes location, Bytes32 hash, Bytes path) {
         int nChild = BranchNode.maxChild();
         ArrayList<Node<V>> children = new ArrayList<Node<V>>(nChild);
+        Bytes childPrefix = Bytes.concatenate(location, path);
+        List<Bytes> childLocations = new ArrayList<>(nChild);
+        for (int i=0; i < nChild; i++) {
+            childLocations.add(Bytes.concatenate(childPrefix, Bytes.of(i)));
+        }
+        List<Optional<List<Bytes>>> records = loadRecords(childLocations);
         for (int i=0; i < nChild; i++) {
-            Optional<Node<V>> child = retrieve(Bytes.concatenate(location, Bytes.of(i)), hash);
+            Bytes childLocation = childLocations.get(i);
+            Optional<Node<V>> child = records.get(i).flatMap(values -> create(childLocation, values));
             children.add(child.orElse(NullNode.instance()));
         }
-        return new BranchNode<V>(location, hash, path, children);
+        BranchNode<V> branchNode = new BranchNode<V>(location, hash, path, children);
+        branchNode.markClean();
+        return branchNode;
+    }
+
+    protected BranchNode<V> createBranchNode(
+            Bytes location, Bytes32 hash, Bytes path, Bytes32 childrenBitmap, List<Bytes> commitments) {
+        // Existing children are loaded only when visited, or when the branch is committed to from scratch as their
+        // hashes are not stored with it
+        int nChild = BranchNode.maxChild();
+        ArrayList<Node<V>> children = new ArrayList<Node<V>>(nChild);
+        Bytes childPrefix = Bytes.concatenate(location, path);
+        for (int i=0; i < nChild; i++) {
+            if ((childrenBitmap.get(i / 8) & (0x80 >>> (i % 8))) != 0) {
+                children.add(new StoredNode<V>(this, Bytes.concatenate(childPrefix, Bytes.of(i))));
+            } else {
+                children.add(NullNode.instance());
+            }
+        }
+        // One commitment for internal nodes, two for stems
+        Optional<Bytes32> commitment = Optional.empty();
+        Optional<Bytes32> leftCommitment = Optional.empty();
+        Optional<Bytes32> rightCommitment = Optional.empty();
+        if (commitments.size() == 1) {
+            commitment = Optional.of(Bytes32.wrap(commitments.get(0)));
+        } else if (commitments.size() == 2) {
+            leftCommitment = Optional.of(Bytes32.wrap(commitments.get(0)));
+            rightCommitment = Optional.of(Bytes32.wrap(commitments.get(1)));
+        }
+        BranchNode<V> branchNode = new BranchNode<V>(
+            location, hash, commitment, leftCommitment, rightCommitment, path, children);
+        branchNode.markClean();
+        return branchNode;
+    }
+
+    protected StemNode<V> createStemNode(
+            Bytes location, Bytes32 hash, Bytes path, Bytes32 valuesBitmap, List<Bytes> encoded) {
+        Bytes32 leftCommitment = Bytes32.wrap(encoded.get(0));
+        Bytes32 rightCommitment = Bytes32.wrap(encoded.get(1));
+        Bytes stem = encoded.get(2);
+        StemNode<V> stemNode = new StemNode<V>(location, stem, path, hash, leftCommitment, rightCommitment);
+        int next = 3;
+        for (int i = 0; i < StemNode.maxChild(); i++) {
+            if ((valuesBitmap.get(i / 8) & (0x80 >>> (i % 8))) != 0) {
+                stemNode.setValue((byte) i, valueDeserializer.apply(encoded.get(next++)));
+            }
+        }
+        // Loaded values are the ones committed to
+        stemNode.getPreviousValues().clear();
+        stemNode.markClean();
+        return stemNode;
     }
 
-    protected LeafNode<V> createLeafNode(Bytes location, Bytes path, V value) {
-        return new LeafNode<V>(Optional.of(location), value, path);
+    protected LeafNode<V> createLeafNode(Bytes location, Bytes path, V value, Optional<Bytes32> hash) {
+        LeafNode<V> leafNode = new LeafNode<V>(Optional.of(location), value, path, hash);
+        leafNode.markClean();
+        return leafNode;
     }
     
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright Hyperledger Besu Contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.besu.ethereum.trie.verkle;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+
+
+/**
+ * Builds and persists a trie from keys given in increasing order.
+ *
+ * Once keys move past a subtree, that subtree cannot change anymore: it is hashed, stored with the NodeUpdater,
+ * and replaced in its parent by a StoredNode holding its hash. Only the path from the root to the last key is
+ * kept in memory, so building does not depend on the number of keys.
+ */
+public class StreamingTrieBuilder<V extends Bytes> {
+    private final NodeUpdater nodeUpdater;
+    private final NodeFactory<V> nodeFactory;
+    private HashVisitor<V> hashVisitor = new HashVisitor<V>();
+    private Node<V> root = NullNode.instance();
+    private Bytes32 lastKey;
+    private boolean built = false;
+
+    /**
+     * @param nodeUpdater updater storing the built nodes.
+     * @param nodeFactory factory loading them back, used by the placeholders of stored subtrees.
+     */
+    public StreamingTrieBuilder(final NodeUpdater nodeUpdater, final NodeFactory<V> nodeFactory) {
+        this.nodeUpdater = nodeUpdater;
+        this.nodeFactory = nodeFactory;
+    }
+
+    public void setHashVisitor(final HashVisitor<V> hashVisitor) {
+        checkNotNull(hashVisitor);
+        this.hashVisitor = hashVisitor;
+    }
+
+    /**
+     * Adds a value, storing the subtrees the key moves past.
+     *
+     * @param key key greater than all the keys added so far.
+     * @param value value at key.
+     */
+    public void put(final Bytes32 key, final V value) {
+        checkNotNull(key);
+        checkNotNull(value);
+        checkState(!built, "Trie is already built");
+        checkArgument(lastKey == null || key.compareTo(lastKey) > 0, "Keys must be added in increasing order");
+        root = root.accept(new PutVisitor<V>(value), key);
+        if (lastKey != null) {
+            storeCompleted(lastKey, KeyPath.commonPrefixLength(lastKey, key, 0));
+        }
+        lastKey = key;
+    }
+
+    /**
+     * Adds values in increasing key order.
+     *
+     * @param entries iterator over the keys and values.
+     */
+    public void putAll(final Iterator<? extends Map.Entry<Bytes32, ? extends V>> entries) {
+        while (entries.hasNext()) {
+            final Map.Entry<Bytes32, ? extends V> entry = entries.next();
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Hashes and stores what is left of the trie.
+     *
+     * @return root of the built trie, as a placeholder for the stored root.
+     */
+    public Node<V> build() {
+        checkState(!built, "Trie is already built");
+        built = true;
+        if (root instanceof NullNode) {
+            return root;
+        }
+        return store(root, Bytes.EMPTY);
+    }
+
+    // Stores the subtree holding lastKey that the next key, sharing commonLength bytes with it, moved past
+    private void storeCompleted(final Bytes32 lastKey, final int commonLength) {
+        Node<V> node = root;
+        Bytes location = Bytes.EMPTY;
+        while (node instanceof BranchNode) {
+            final BranchNode<V> branchNode = (BranchNode<V>) node;
+            final int depth = location.size() + branchNode.getPath().size();
+            if (depth > commonLength) {
+                return;
+            }
+            final byte index = lastKey.get(depth);
+            final Bytes childLocation = Bytes.concatenate(location, branchNode.getPath(), Bytes.of(index));
+            if (depth == commonLength) {
+                // Keys differ here, the child holding lastKey is complete
+                branchNode.replaceChild(index, store(branchNode.child(index), childLocation));
+                return;
+            }
+            node = branchNode.child(index);
+            location = childLocation;
+        }
+    }
+
+    private Node<V> store(final Node<V> node, final Bytes location) {
+        if (node instanceof StoredNode) {
+            return node;
+        }
+        final Node<V> hashedNode = hashVisitor.commit(node, location, nodeUpdater);
+        return new StoredNode<V>(nodeFactory, location, hashedNode.getHash().get());
+    }
+}
@@ -1,5 +1,12 @@
 package org.hyperledger.besu.ethereum.trie.verkle;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
 import org.apache.tuweni.units.bigints.UInt256;
@@ -16,10 +23,27 @@ public class TrieKeyAdapter {
     private final UInt256 VERKLE_NODE_WIDTH = UInt256.valueOf(256);
     private final UInt256 MAIN_STORAGE_OFFSET = UInt256.valueOf(256).pow(31);
 
+    public static final int DEFAULT_CACHE_SIZE = 4096;
+
     private Hasher<Bytes32> hasher;
+    private final Map<Bytes, Bytes32> baseKeyCache;  // (address, treeIndex) -> base key, least recently used first
 
     public TrieKeyAdapter(Hasher<Bytes32> hasher) {
+        this(hasher, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param hasher hasher computing the base keys.
+     * @param cacheSize number of base keys kept, the headers and storage slots of an account sharing one.
+     */
+    public TrieKeyAdapter(Hasher<Bytes32> hasher, int cacheSize) {
         this.hasher = hasher;
+        this.baseKeyCache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Bytes, Bytes32> eldest) {
+                return size() > cacheSize;
+            }
+        });
     }
 
     Bytes32 swapLastByte(Bytes32 base, UInt256 subIndex) {
@@ -28,6 +52,29 @@ public class TrieKeyAdapter {
     }
 
     Bytes32 baseKey(Bytes32 address, UInt256 treeIndex) {
+        Bytes cacheKey = Bytes.concatenate(address, treeIndex);
+        Bytes32 key = baseKeyCache.get(cacheKey);
+        if (key == null) {
+            key = computeBaseKeys(List.of(address), List.of(treeIndex)).get(0);
+            baseKeyCache.put(cacheKey, key);
+        }
+        return key;
+    }
+
+    // Derives base keys natively where the hasher allows it, or commits to their inputs
+    private List<Bytes32> computeBaseKeys(List<Bytes32> addresses, List<UInt256> treeIndices) {
+        Optional<List<Bytes32>> derived = hasher.deriveKeys(addresses, treeIndices);
+        if (derived.isPresent()) {
+            return derived.get();
+        }
+        List<Bytes32[]> inputs = new ArrayList<>(addresses.size());
+        for (int i = 0; i < addresses.size(); i++) {
+            inputs.add(baseKeyInput(addresses.get(i), treeIndices.get(i)));
+        }
+        return hasher.commitBatch(inputs);
+    }
+
+    Bytes32[] baseKeyInput(Bytes32 address, UInt256 treeIndex) {
         int type_encoding = 2;
         UInt256 encoding = UInt256.valueOf(type_encoding).add(VERKLE_NODE_WIDTH.multiply(UInt256.valueOf(16)));
 
@@ -38,8 +85,45 @@ public class TrieKeyAdapter {
             Bytes32.rightPad(treeIndex.toBytes().slice(16, 16).reverse()),
             Bytes32.rightPad(treeIndex.toBytes().slice(0, 16).reverse())
         };
-        Bytes32 key = hasher.commit(input);
-        return key;
+        return input;
+    }
+
+    /**
+     * Base keys of several (address, treeIndex) pairs, whose first 31 bytes are the stems.
+     *
+     * Keys missing from the cache are derived with a single call to the hasher.
+     *
+     * @param addresses addresses of the accounts.
+     * @param treeIndices tree index for each address.
+     * @return base keys, in the order of addresses.
+     */
+    public List<Bytes32> stems(List<Bytes32> addresses, List<UInt256> treeIndices) {
+        if (addresses.size() != treeIndices.size()) {
+            throw new IllegalArgumentException("Expected one tree index per address");
+        }
+        List<Bytes32> keys = new ArrayList<>(addresses.size());
+        List<Integer> missing = new ArrayList<>();
+        List<Bytes32> missingAddresses = new ArrayList<>();
+        List<UInt256> missingIndices = new ArrayList<>();
+        for (int i = 0; i < addresses.size(); i++) {
+            Bytes32 key = baseKeyCache.get(Bytes.concatenate(addresses.get(i), treeIndices.get(i)));
+            keys.add(key);
+            if (key == null) {
+                missing.add(i);
+                missingAddresses.add(addresses.get(i));
+                missingIndices.add(treeIndices.get(i));
+            }
+        }
+        if (missing.isEmpty()) {
+            return keys;
+        }
+        List<Bytes32> computed = computeBaseKeys(missingAddresses, missingIndices);
+        for (int j = 0; j < missing.size(); j++) {
+            int i = missing.get(j);
+            keys.set(i, computed.get(j));
+            baseKeyCache.put(Bytes.concatenate(addresses.get(i), treeIndices.get(i)), computed.get(j));
+        }
+        return keys;
     }
 
     public Bytes32 storageKey(Bytes32 address, UInt256 storageKey) {
@@ -58,6 +142,36 @@ public class TrieKeyAdapter {
         return key;
     }
 
+    /**
+     * Keys of the first chunks of an account's code.
+     *
+     * Chunks sharing a stem share their base key, which is derived once, all of them with a single call to the hasher.
+     *
+     * @param address address of the account.
+     * @param chunkCount number of chunks.
+     * @return key of each chunk, in chunk order.
+     */
+    public List<Bytes32> codeChunkKeys(Bytes32 address, int chunkCount) {
+        if (chunkCount == 0) {
+            return Collections.emptyList();
+        }
+        int codeOffset = CODE_OFFSET.intValue();
+        int width = VERKLE_NODE_WIDTH.intValue();
+        int stemCount = (codeOffset + chunkCount - 1) / width + 1;
+        List<Bytes32> addresses = Collections.nCopies(stemCount, address);
+        List<UInt256> treeIndices = new ArrayList<>(stemCount);
+        for (int i = 0; i < stemCount; i++) {
+            treeIndices.add(UInt256.valueOf(i));
+        }
+        List<Bytes32> bases = stems(addresses, treeIndices);
+        List<Bytes32> keys = new ArrayList<>(chunkCount);
+        for (int chunkId = 0; chunkId < chunkCount; chunkId++) {
+            int pos = codeOffset + chunkId;
+            keys.add(swapLastByte(bases.get(pos / width), UInt256.valueOf(pos % width)));
+        }
+        return keys;
+    }
+
     // Headers
     Bytes32 headerKey(Bytes32 address, UInt256 leafKey) {
         Bytes32 base = baseKey(address, UInt256.valueOf(0));
@@ -84,4 +198,20 @@ public class TrieKeyAdapter {
     public Bytes32 codeSizeKey(Bytes32 address) {
         return headerKey(address, CODE_SIZE_LEAF_KEY);
     }
+
+    /**
+     * All header keys of an account, derived from a single base key.
+     *
+     * @param address address of the account.
+     * @return version, balance, nonce, code keccak and code size keys.
+     */
+    public List<Bytes32> headerKeys(Bytes32 address) {
+        Bytes32 base = baseKey(address, UInt256.valueOf(0));
+        return List.of(
+            swapLastByte(base, VERSION_LEAF_KEY),
+            swapLastByte(base, BALANCE_LEAF_KEY),
+            swapLastByte(base, NONCE_LEAF_KEY),
+            swapLastByte(base, CODE_KECCAK_LEAF_KEY),
+            swapLastByte(base, CODE_SIZE_LEAF_KEY));
+    }
 }
\ No newline at end of file
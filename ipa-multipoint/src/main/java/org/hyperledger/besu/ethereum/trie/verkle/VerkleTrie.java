@@ -14,7 +14,9 @@
  */
 package org.hyperledger.besu.ethereum.trie.verkle;
 
+import java.util.Map;
 import java.util.Optional;
+import java.util.SortedMap;
 import org.apache.tuweni.bytes.Bytes32;
 
 /** Verkle Trie. */
@@ -44,6 +46,21 @@ public interface VerkleTrie<K, V> {
    */
   void remove(K key);
 
+  /**
+   * Applies a batch of updates, an empty value removes the key.
+   *
+   * @param updates The values to associate the keys with, in key order.
+   */
+  default void putAll(SortedMap<K, Optional<V>> updates) {
+    for (Map.Entry<K, Optional<V>> update : updates.entrySet()) {
+      if (update.getValue().isPresent()) {
+        put(update.getKey(), update.getValue().get());
+      } else {
+        remove(update.getKey());
+      }
+    }
+  }
+
   /**
    * Returns the hash of the root node of the trie.
    *
@@ -58,6 +58,79 @@ public class LibIpaMultipoint {
    */
   public static native byte[] commit_root(byte[] input);
 
+  /**
+   * Updates a commitment after one of its scalars changed, without recomputing the whole commitment.
+   * @param commitment commitment.to_bytes() as returned by commit_root
+   * @param index index of the scalar that changed
+   * @param oldScalar Fr previously committed at index
+   * @param newScalar Fr now committed at index
+   * @return (commitment + (newScalar - oldScalar) * G_index).to_bytes()
+   */
+  public static native byte[] updateCommitment(byte[] commitment, byte index, byte[] oldScalar, byte[] newScalar);
+
+  /**
+   * Maps a commitment to a scalar field element.
+   * @param commitment commitment.to_bytes() as returned by commit_root
+   * @return group_to_field(commitment)
+   */
+  public static native byte[] groupToField(byte[] commitment);
+
+  /**
+   * Commits to many inputs in a single call, computing the commitments in parallel.
+   * @param flatInputs inputs [Fr,Fr,Fr...] back to back
+   * @param offsets offset in flatInputs where each input starts, the last input ends with flatInputs
+   * @return group_to_field(commitment) of each input, back to back
+   */
+  public static native byte[] commitMany(byte[] flatInputs, int[] offsets);
+
+  /**
+   * Commits to many inputs in a single call, computing the commitments in parallel.
+   * @param flatInputs inputs [Fr,Fr,Fr...] back to back
+   * @param offsets offset in flatInputs where each input starts, the last input ends with flatInputs
+   * @return commitment.to_bytes() of each input, back to back
+   */
+  public static native byte[] commitRootMany(byte[] flatInputs, int[] offsets);
+
+  /**
+   * Maps many commitments to scalar field elements in a single call.
+   * @param commitments commitment.to_bytes() as returned by commit_root, back to back
+   * @return group_to_field(commitment) of each commitment, back to back
+   */
+  public static native byte[] groupToFieldMany(byte[] commitments);
+
+  /**
+   * Commits to scalars at the given indices, every other scalar being zero.
+   * @param indices index of each scalar, as an unsigned byte
+   * @param scalars [Fr,Fr,Fr...], one per index
+   * @return group_to_field(commitment), as commit would return for the dense input
+   */
+  public static native byte[] commitSparse(byte[] indices, byte[] scalars);
+
+  /**
+   * Commits to many sparse inputs in a single call, computing the commitments in parallel.
+   * @param flatIndices indices of each input back to back
+   * @param flatScalars scalars of each input back to back, one per index
+   * @param offsets number of indices before each input, the last input ends with flatIndices
+   * @return group_to_field(commitment) of each input, back to back
+   */
+  public static native byte[] commitSparseMany(byte[] flatIndices, byte[] flatScalars, int[] offsets);
+
+  /**
+   * Commits to many sparse inputs in a single call, computing the commitments in parallel.
+   * @param flatIndices indices of each input back to back
+   * @param flatScalars scalars of each input back to back, one per index
+   * @param offsets number of indices before each input, the last input ends with flatIndices
+   * @return commitment.to_bytes() of each input, back to back
+   */
+  public static native byte[] commitRootSparseMany(byte[] flatIndices, byte[] flatScalars, int[] offsets);
+
+  /**
+   * Derives the base keys of many (address, tree index) pairs in a single call, computing them in parallel.
+   * @param addressesAndIndices 32 bytes address followed by 32 bytes big endian tree index, for each pair
+   * @return base key of each pair, back to back, as commit returns for the key inputs of TrieKeyAdapter
+   */
+  public static native byte[] deriveKeys(byte[] addressesAndIndices);
+
   /**
    * Pedersen hash as specified in https://notes.ethereum.org/@vbuterin/verkle_tree_eip
    * @param input Expects 64byte value as input encoded as byte[] e.g. "0x000..." <-> [48,48,48...] (48 is 0 in ASCII)
@@ -0,0 +1,60 @@
+package org.hyperledger.besu.ethereum.trie.verkle;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.*;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.units.bigints.UInt256;
+
+public class CodeChunkerTest {
+    Bytes32 address = Bytes32.fromHexString("0x000000000000000000000000112233445566778899aabbccddeeff00112233");
+
+    @Test
+    public void testErc20Chunks() throws IOException {
+        InputStream inputStream = CodeChunkerTest.class.getResourceAsStream("/erc20-chunks.json");
+        Map<String, Object> testData = new ObjectMapper().readValue(inputStream, new TypeReference<Map<String, Object>>() {});
+        Bytes code = Bytes.fromHexString((String) testData.get("bytecode"));
+        List<Bytes32> expected = new ArrayList<>();
+        for (Object chunk : (List<?>) testData.get("chunks")) {
+            expected.add(Bytes32.fromHexString((String) chunk));
+        }
+        assertThat(CodeChunker.chunkCount(code.size())).isEqualTo(expected.size());
+        assertThat(CodeChunker.chunkify(code)).isEqualTo(expected);
+    }
+
+    @Test
+    public void testPushdataAcrossChunks() {
+        // PUSH32 at the end of the first chunk, its data fills the second chunk and the first byte of the third
+        Bytes code = Bytes.concatenate(Bytes.repeat((byte) 0x00, 30), Bytes.of(0x7f), Bytes.repeat((byte) 0xff, 32));
+        List<Bytes32> chunks = CodeChunker.chunkify(code);
+        assertThat(chunks).hasSize(3);
+        assertThat(chunks.get(0).get(0)).isEqualTo((byte) 0);
+        assertThat(chunks.get(1).get(0)).isEqualTo((byte) 31);
+        assertThat(chunks.get(2).get(0)).isEqualTo((byte) 1);
+        assertThat(chunks.get(2).slice(2)).isEqualTo(Bytes.repeat((byte) 0x00, 30));
+    }
+
+    @Test
+    public void testPutCode() {
+        TrieKeyAdapter adapter = new TrieKeyAdapter(new SHA256Hasher());
+        // Spans the first stem, holding 128 chunks, and two more stems
+        Bytes code = Bytes.repeat((byte) 0x5b, 400 * CodeChunker.CHUNK_SIZE + 7);
+        List<Bytes32> chunks = CodeChunker.chunkify(code);
+        SimpleVerkleTrie<Bytes32, Bytes32> trie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        CodeChunker.putCode(trie, adapter, address, code);
+        for (int chunkId = 0; chunkId < chunks.size(); chunkId++) {
+            Bytes32 key = adapter.codeChunkKey(address, UInt256.valueOf(chunkId));
+            assertThat(trie.get(key)).as("Chunk %d", chunkId).contains(chunks.get(chunkId));
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright Hyperledger Besu Contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.besu.ethereum.trie.verkle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.*;
+
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+
+public class ConcurrentVerkleTrieTest {
+
+    @Test
+    public void testPublishedView() {
+        ConcurrentVerkleTrie<Bytes32, Bytes32> trie = new ConcurrentVerkleTrie<Bytes32, Bytes32>();
+        Bytes32 key = Bytes32.fromHexString("0x00112233445566778899aabbccddeeff00112233445566778899aabbccddeeff");
+        Bytes32 value = Bytes32.fromHexString("0x1000000000000000000000000000000000000000000000000000000000000000");
+        ConcurrentVerkleTrie.View<Bytes32, Bytes32> emptyView = trie.getView();
+        trie.put(key, value);
+        assertThat(trie.get(key)).as("Writer sees its updates").contains(value);
+        assertThat(trie.getView().get(key)).as("Readers see published versions").isEmpty();
+        Bytes32 rootHash = trie.getRootHash();
+        assertThat(trie.getView().get(key)).contains(value);
+        assertThat(trie.getView().getRootHash()).isEqualByComparingTo(rootHash);
+        assertThat(emptyView.getRootHash()).isEqualByComparingTo(Bytes32.ZERO);
+        assertThat(emptyView.get(key)).isEmpty();
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+        ConcurrentVerkleTrie<Bytes32, Bytes32> trie = new ConcurrentVerkleTrie<Bytes32, Bytes32>();
+        List<Bytes32> keys = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            keys.add(Bytes32.fromHexString(String.format("0x%02x%02x2233445566778899aabbccddeeff00112233445566778899aabbccdd%02x%02x", i % 3, i % 5, i % 4, i)));
+        }
+        keys.forEach(key -> trie.put(key, Bytes32.ZERO));
+        trie.getRootHash();
+
+        AtomicBoolean done = new AtomicBoolean(false);
+        ExecutorService readers = Executors.newFixedThreadPool(2);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int t = 0; t < 2; t++) {
+            results.add(readers.submit(() -> {
+                int reads = 0;
+                while (!done.get() || reads == 0) {
+                    // Every key of a version holds the same value
+                    ConcurrentVerkleTrie.View<Bytes32, Bytes32> view = trie.getView();
+                    Bytes32 expected = view.get(keys.get(0)).get();
+                    for (Bytes32 key : keys) {
+                        assertThat(view.get(key)).contains(expected);
+                    }
+                    reads++;
+                    Thread.sleep(1);
+                }
+                return reads;
+            }));
+        }
+        for (int version = 1; version <= 5; version++) {
+            Bytes32 value = Bytes32.leftPad(Bytes.ofUnsignedInt(version));
+            keys.forEach(key -> trie.put(key, value));
+            trie.getRootHash();
+        }
+        done.set(true);
+        for (Future<Integer> result : results) {
+            assertThat(result.get()).isPositive();
+        }
+        readers.shutdown();
+        assertThat(trie.getView().get(keys.get(0))).contains(Bytes32.leftPad(Bytes.ofUnsignedInt(5)));
+    }
+}
@@ -0,0 +1,220 @@
+package org.hyperledger.besu.ethereum.trie.verkle;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.assertj.core.api.Assertions.*;
+
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+
+public class MappedNodeStoreTest {
+    @TempDir
+    Path directory;
+
+    Bytes32 key1 = Bytes32.fromHexString("0x00112233445566778899aabbccddeeff00112233445566778899aabbccddeeff");
+    Bytes32 key2 = Bytes32.fromHexString("0x00112233445566778899aabbccddeeff00112233445566778899aabbccddee00");
+    Bytes32 key3 = Bytes32.fromHexString("0xff112233445566778899aabbccddeeff00112233445566778899aabbccddeeff");
+    Bytes32 value1 = Bytes32.fromHexString("0x1000000000000000000000000000000000000000000000000000000000000000");
+    Bytes32 value2 = Bytes32.fromHexString("0x0200000000000000000000000000000000000000000000000000000000000000");
+
+    @Test
+    public void testStoredTrie() throws IOException {
+        SimpleVerkleTrie<Bytes32, Bytes32> trie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        trie.put(key1, value1);
+        trie.put(key2, value2);
+        trie.put(key3, value1);
+        try (MappedNodeStore store = new MappedNodeStore(directory)) {
+            // The trie's nodes are stored as one batch, committed without store.commit
+            trie.commit(store);
+        }
+
+        try (MappedNodeStore store = new MappedNodeStore(directory)) {
+            StoredNodeFactory<Bytes32> nodeFactory = new StoredNodeFactory<>(store, value -> Bytes32.wrap(value));
+            SimpleVerkleTrie<Bytes32, Bytes32> storedTrie =
+                new SimpleVerkleTrie<Bytes32, Bytes32>(nodeFactory.retrieve(Bytes.EMPTY, null).get());
+            assertThat(storedTrie.get(key1)).contains(value1);
+            assertThat(storedTrie.get(key2)).contains(value2);
+            assertThat(storedTrie.get(key3)).contains(value1);
+            assertThat(storedTrie.getRootHash()).isEqualTo(trie.getRootHash());
+        }
+    }
+
+    @Test
+    public void testUncommittedNodesAreDropped() throws IOException {
+        try (MappedNodeStore store = new MappedNodeStore(directory)) {
+            store.store(Bytes.of(1), null, value1);
+            store.commit();
+            store.store(Bytes.of(2), null, value2);
+            assertThat(store.getNode(Bytes.of(2), null)).as("Visible before commit").contains(value2);
+        }
+        try (MappedNodeStore store = new MappedNodeStore(directory)) {
+            assertThat(store.getNode(Bytes.of(1), null)).contains(value1);
+            assertThat(store.getNode(Bytes.of(2), null)).isEmpty();
+            // Writing resumes after the last committed batch
+            store.store(Bytes.of(3), null, value2);
+            store.commit();
+        }
+        try (MappedNodeStore store = new MappedNodeStore(directory)) {
+            assertThat(store.getNode(Bytes.of(3), null)).contains(value2);
+            assertThat(store.size()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    public void testTornBatchIsDropped() throws IOException {
+        try (MappedNodeStore store = new MappedNodeStore(directory, 4096, 0.5)) {
+            store.store(Bytes.of(1), null, value1);
+            store.commit();
+            store.store(Bytes.of(2), null, value2);
+            store.commit();
+        }
+        // Corrupts the value of the second batch, as if its page had not been written
+        Path segment = directory.resolve("segment-00000000.log");
+        byte[] content = Files.readAllBytes(segment);
+        int valueOffset = indexOf(content, value2.toArrayUnsafe());
+        content[valueOffset] = (byte) 0x7f;
+        Files.write(segment, content);
+
+        try (MappedNodeStore store = new MappedNodeStore(directory, 4096, 0.5)) {
+            assertThat(store.getNode(Bytes.of(1), null)).contains(value1);
+            assertThat(store.getNode(Bytes.of(2), null)).isEmpty();
+        }
+    }
+
+    @Test
+    public void testReopenWithDifferentSegmentSize() throws IOException {
+        try (MappedNodeStore store = new MappedNodeStore(directory, 1024, 0.5)) {
+            for (int location = 0; location < 200; location++) {
+                store.store(Bytes.of(location), null, value1);
+            }
+            store.commit();
+        }
+        assertThatThrownBy(() -> new MappedNodeStore(directory, 2048, 0.5)).isInstanceOf(IOException.class);
+
+        try (MappedNodeStore store = new MappedNodeStore(directory, 1024, 0.5)) {
+            assertThat(store.size()).isEqualTo(200);
+            for (int location = 0; location < 200; location++) {
+                assertThat(store.getNode(Bytes.of(location), null)).contains(value1);
+            }
+        }
+    }
+
+    @Test
+    public void testCorruptedCommittedSegmentIsRejected() throws IOException {
+        try (MappedNodeStore store = new MappedNodeStore(directory, 1024, 0.5)) {
+            for (int location = 0; location < 64; location++) {
+                store.store(Bytes.of(location), null, value1);
+                store.commit();
+            }
+        }
+        Path segment = directory.resolve("segment-00000000.log");
+        byte[] content = Files.readAllBytes(segment);
+        content[indexOf(content, value1.toArrayUnsafe())] = (byte) 0x7f;
+        Files.write(segment, content);
+
+        assertThatThrownBy(() -> new MappedNodeStore(directory, 1024, 0.5)).isInstanceOf(IOException.class);
+        assertThat(directory.resolve("segment-00000002.log")).as("Committed segments are kept").exists();
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        int segmentSize = 1024;
+        try (MappedNodeStore store = new MappedNodeStore(directory, segmentSize, 0.5)) {
+            store.store(Bytes.of(0), null, value1);
+            store.commit();
+            // Each round replaces the records of the previous one, filling several segments
+            for (int round = 0; round < 20; round++) {
+                for (int location = 1; location <= 4; location++) {
+                    store.store(Bytes.of(location), null, Bytes32.leftPad(Bytes.of(round)));
+                }
+                store.commit();
+            }
+            store.compact();
+            assertThat(store.segmentCount()).as("Sparse segments are compacted").isLessThanOrEqualTo(2);
+            assertThat(store.getNode(Bytes.of(0), null)).contains(value1);
+            assertThat(store.getNode(Bytes.of(4), null)).contains(Bytes32.leftPad(Bytes.of(19)));
+        }
+        try (MappedNodeStore store = new MappedNodeStore(directory, segmentSize, 0.5)) {
+            assertThat(store.size()).isEqualTo(5);
+            assertThat(store.getNode(Bytes.of(0), null)).contains(value1);
+            for (int location = 1; location <= 4; location++) {
+                assertThat(store.getNode(Bytes.of(location), null)).contains(Bytes32.leftPad(Bytes.of(19)));
+            }
+        }
+    }
+
+    @Test
+    public void testBatchAcrossCompactedSegments() throws IOException {
+        int segmentSize = 1024;
+        try (MappedNodeStore store = new MappedNodeStore(directory, segmentSize, 0.5)) {
+            // Spans three segments, the commit marker being in the last one
+            for (int location = 0; location < 64; location++) {
+                store.store(Bytes.of(location), null, value1);
+            }
+            store.commit();
+            // Replaces the records of the first segments, which compaction then deletes
+            for (int location = 0; location < 48; location++) {
+                store.store(Bytes.of(location), null, value2);
+            }
+            store.commit();
+            store.compact();
+        }
+        try (MappedNodeStore store = new MappedNodeStore(directory, segmentSize, 0.5)) {
+            assertThat(store.size()).isEqualTo(64);
+            for (int location = 0; location < 64; location++) {
+                assertThat(store.getNode(Bytes.of(location), null)).contains(location < 48 ? value2 : value1);
+            }
+        }
+    }
+
+    @Test
+    public void testDeletedNodesStayDeleted() throws IOException {
+        int segmentSize = 1024;
+        try (MappedNodeStore store = new MappedNodeStore(directory, segmentSize, 0.5)) {
+            // Spans three segments
+            for (int location = 0; location < 64; location++) {
+                store.store(Bytes.of(location), null, value1);
+            }
+            store.commit();
+            for (int location = 0; location < 64; location++) {
+                if (location % 4 != 3) {
+                    store.delete(Bytes.of(location));
+                }
+            }
+            assertThat(store.getNode(Bytes.of(0), null)).as("Deleted before commit").isEmpty();
+            store.commit();
+            assertThat(store.size()).isEqualTo(16);
+        }
+        try (MappedNodeStore store = new MappedNodeStore(directory, segmentSize, 0.5)) {
+            store.compact();
+            assertThat(store.segmentCount()).as("Tombstones dropped with the older segments").isEqualTo(1);
+        }
+        try (MappedNodeStore store = new MappedNodeStore(directory, segmentSize, 0.5)) {
+            assertThat(store.size()).isEqualTo(16);
+            for (int location = 0; location < 64; location++) {
+                if (location % 4 != 3) {
+                    assertThat(store.getNode(Bytes.of(location), null)).isEmpty();
+                } else {
+                    assertThat(store.getNode(Bytes.of(location), null)).contains(value1);
+                }
+            }
+        }
+    }
+
+    private static int indexOf(byte[] content, byte[] pattern) {
+        for (int i = 0; i + pattern.length <= content.length; i++) {
+            boolean found = true;
+            for (int j = 0; j < pattern.length && found; j++) {
+                found = content[i + j] == pattern[j];
+            }
+            if (found) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Pattern not found");
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright Hyperledger Besu Contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.besu.ethereum.trie.verkle;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.*;
+
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+
+public class NodeCacheTest {
+
+    private static List<Bytes> record(int i) {
+        return List.of(Bytes32.leftPad(Bytes.ofUnsignedInt(i)));
+    }
+
+    @Test
+    public void testSizeBound() {
+        NodeCache cache = new NodeCache(4096);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(Bytes.ofUnsignedInt(i), record(i));
+        }
+        assertThat(cache.getSizeInBytes()).isLessThanOrEqualTo(4096);
+        assertThat(cache.getEvictionCount()).isEqualTo(1000 - cache.size());
+        assertThat(cache.get(Bytes.ofUnsignedInt(999))).contains(record(999));
+        assertThat(cache.get(Bytes.ofUnsignedInt(0))).isEmpty();
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testScanResistance() {
+        NodeCache cache = new NodeCache(4096);
+        Bytes hot = Bytes.of(0);
+        cache.put(hot, record(0));
+        cache.get(hot);
+        for (int i = 1; i < 1000; i++) {
+            cache.put(Bytes.ofUnsignedInt(i), record(i));
+        }
+        assertThat(cache.get(hot)).as("Records read twice survive a scan").contains(record(0));
+    }
+
+    @Test
+    public void testInvalidate() {
+        NodeCache cache = new NodeCache(4096);
+        cache.put(Bytes.of(1), record(1));
+        cache.put(Bytes.of(1), record(2));
+        assertThat(cache.get(Bytes.of(1))).contains(record(2));
+        cache.invalidate(Bytes.of(1));
+        assertThat(cache.get(Bytes.of(1))).isEmpty();
+        assertThat(cache.getSizeInBytes()).isZero();
+    }
+}
@@ -0,0 +1,82 @@
+package org.hyperledger.besu.ethereum.trie.verkle;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.*;
+
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.bytes.MutableBytes;
+import org.apache.tuweni.rlp.RLP;
+import org.apache.tuweni.rlp.RLPWriter;
+
+public class NodeEncodingTest {
+    Bytes32 key1 = Bytes32.fromHexString("0x00112233445566778899aabbccddeeff00112233445566778899aabbccddeeff");
+    Bytes32 key2 = Bytes32.fromHexString("0x00112233445566778899aabbccddeeff00112233445566778899aabbccddee00");
+    Bytes32 key3 = Bytes32.fromHexString("0xff112233445566778899aabbccddeeff00112233445566778899aabbccddeeff");
+    Bytes32 value1 = Bytes32.fromHexString("0x1000000000000000000000000000000000000000000000000000000000000000");
+    Bytes32 value2 = Bytes32.fromHexString("0x0200000000000000000000000000000000000000000000000000000000000000");
+
+    @Test
+    public void testLeafRoundTrip() {
+        Bytes path = Bytes.fromHexString("0x0102");
+        Bytes32 hash = Bytes32.fromHexString("0x03");
+        assertThat(NodeEncoding.decode(NodeEncoding.encodeLeaf(path, value1, Optional.of(hash))))
+            .containsExactly(Bytes.EMPTY, path, value1, hash);
+        assertThat(NodeEncoding.decode(NodeEncoding.encodeLeaf(Bytes.EMPTY, value1, Optional.empty())))
+            .containsExactly(Bytes.EMPTY, Bytes.EMPTY, value1);
+    }
+
+    @Test
+    public void testStemRoundTrip() {
+        Bytes32 hash = Bytes32.fromHexString("0x01");
+        Bytes32 bitmap = Bytes32.fromHexString("0x8001");
+        Bytes32 left = Bytes32.fromHexString("0x02");
+        Bytes32 right = Bytes32.fromHexString("0x03");
+        Bytes stem = key1.slice(0, 31);
+        Bytes encoded = NodeEncoding.encodeStem(hash, Bytes.of(0x11), bitmap, left, right, stem, List.of(value1, value2));
+        assertThat(NodeEncoding.decode(encoded))
+            .containsExactly(hash, Bytes.of(0x11), bitmap, left, right, stem, value1, value2);
+    }
+
+    @Test
+    public void testDecodeWithoutCopy() {
+        MutableBytes encoded = NodeEncoding.encodeLeaf(Bytes.EMPTY, value1, Optional.empty()).mutableCopy();
+        List<Bytes> items = NodeEncoding.decode(encoded);
+        encoded.set(encoded.size() - 1, (byte) 0x01);
+        assertThat(items.get(2).get(31)).as("Items are slices of the record").isEqualTo((byte) 0x01);
+    }
+
+    @Test
+    public void testRlpMigration() {
+        NodeUpdaterMock nodeUpdater = new NodeUpdaterMock();
+        SimpleVerkleTrie<Bytes32, Bytes32> trie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        trie.put(key1, value1);
+        trie.put(key2, value2);
+        trie.put(key3, value1);
+        trie.commit(nodeUpdater);
+
+        // Records as they were stored before the binary encoding
+        HashMap<Bytes, Bytes> rlpStorage = new HashMap<Bytes, Bytes>();
+        for (Map.Entry<Bytes, Bytes> record : nodeUpdater.storage.entrySet()) {
+            Bytes rlpRecord = RLP.encodeList(NodeEncoding.decode(record.getValue()), RLPWriter::writeValue);
+            assertThat(NodeEncoding.isRlp(rlpRecord)).isTrue();
+            assertThat(rlpRecord.size()).isGreaterThan(record.getValue().size());
+            assertThat(NodeEncoding.migrate(rlpRecord)).isEqualTo(record.getValue());
+            rlpStorage.put(record.getKey(), rlpRecord);
+        }
+
+        StoredNodeFactory<Bytes32> nodeFactory =
+            new StoredNodeFactory<>(new NodeLoaderMock(rlpStorage), value -> (Bytes32) value);
+        SimpleVerkleTrie<Bytes32, Bytes32> storedTrie =
+            new SimpleVerkleTrie<Bytes32, Bytes32>(nodeFactory.retrieve(Bytes.EMPTY, null).get());
+        assertThat(storedTrie.get(key1)).contains(value1);
+        assertThat(storedTrie.get(key2)).contains(value2);
+        assertThat(storedTrie.get(key3)).contains(value1);
+        assertThat(storedTrie.getRootHash()).isEqualTo(trie.getRootHash());
+    }
+}
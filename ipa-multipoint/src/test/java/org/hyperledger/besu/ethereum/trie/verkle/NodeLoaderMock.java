@@ -1,6 +1,7 @@
 package org.hyperledger.besu.ethereum.trie.verkle;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Optional;
 
 import org.apache.tuweni.bytes.Bytes;
@@ -10,12 +11,21 @@ import org.apache.tuweni.bytes.Bytes32;
 public class NodeLoaderMock implements NodeLoader {
 
     public HashMap<Bytes, Bytes> storage;
+    public int loadCount = 0;
+    public int batchCount = 0;
     
     public NodeLoaderMock(HashMap<Bytes, Bytes> storage) {
         this.storage = storage;
     }
 
     public Optional<Bytes> getNode(Bytes location, Bytes32 hash) {
+        loadCount++;
         return Optional.ofNullable(storage.get(location));
     }
+
+    @Override
+    public List<Optional<Bytes>> getNodes(List<Bytes> locations) {
+        batchCount++;
+        return NodeLoader.super.getNodes(locations);
+    }
 }
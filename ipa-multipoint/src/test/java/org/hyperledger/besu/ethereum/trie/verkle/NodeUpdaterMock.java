@@ -8,6 +8,7 @@ import org.apache.tuweni.bytes.Bytes32;
 public class NodeUpdaterMock implements NodeUpdater {
 
     public HashMap<Bytes, Bytes> storage;
+    public HashMap<Bytes, Bytes32> hashes = new HashMap<Bytes, Bytes32>();
     
     public NodeUpdaterMock() {
         this.storage = new HashMap<Bytes, Bytes>();
@@ -19,5 +20,11 @@ public class NodeUpdaterMock implements NodeUpdater {
 
     public void store(Bytes location, Bytes32 hash, Bytes value) {
         storage.put(location, value);
+        hashes.put(location, hash);
+    }
+
+    public void delete(Bytes location) {
+        storage.remove(location);
+        hashes.remove(location);
     }
 }
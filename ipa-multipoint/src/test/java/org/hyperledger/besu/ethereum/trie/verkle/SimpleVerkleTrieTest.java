@@ -1,6 +1,11 @@
 package org.hyperledger.besu.ethereum.trie.verkle;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+
 import org.junit.jupiter.api.Test;
 import static org.assertj.core.api.Assertions.*;
 
@@ -44,12 +49,12 @@ public class SimpleVerkleTrieTest {
         trie.put(key1, value1);
         trie.put(key2, value2);
         Node<Bytes32> root = trie.getRoot();
-        assertThat(root).as("Many values trie is a BranchNode").isInstanceOf(BranchNode.class);
-        BranchNode<Bytes32> branchRoot = (BranchNode<Bytes32>) root;
-        assertThat(branchRoot.child(index1)).as("Child at index of first key is a LeafNode").isInstanceOf(LeafNode.class);
-        assertThat(branchRoot.child(index2)).as("Child at index of second key is a LeafNode").isInstanceOf(LeafNode.class);
-        assertThat(branchRoot.child(index3)).as("Child at another index is a NullNode").isInstanceOf(NullNode.class);
-        assertThat(branchRoot.getPath()).as("Path is the common stem").isEqualTo(path);
+        assertThat(root).as("Values at the same stem are in a StemNode").isInstanceOf(StemNode.class);
+        StemNode<Bytes32> stemRoot = (StemNode<Bytes32>) root;
+        assertThat(stemRoot.child(index1)).as("Child at index of first key is a LeafNode").isInstanceOf(LeafNode.class);
+        assertThat(stemRoot.child(index2)).as("Child at index of second key is a LeafNode").isInstanceOf(LeafNode.class);
+        assertThat(stemRoot.child(index3)).as("Child at another index is a NullNode").isInstanceOf(NullNode.class);
+        assertThat(stemRoot.getPath()).as("Path is the common stem").isEqualTo(path);
         assertThat(trie.get(key1)).as("Retrieve first value").isEqualTo(Optional.of(value1));
         assertThat(trie.get(key2)).as("Retrieve second value").isEqualTo(Optional.of(value2));
         Bytes32 expectedRootHash = Bytes32.fromHexString("0x0664595728997574720abefebd044352ab20b353f5c8bdb5558d1f17d71d171c");
@@ -205,4 +210,266 @@ public class SimpleVerkleTrieTest {
         trie.remove(key3);
         assertThat(trie.get(key3)).as("Make sure value is deleted").isEqualTo(Optional.empty());
     }
+
+    @Test
+    public void testRootHashAfterUpdates() throws Exception {
+        SimpleVerkleTrie<Bytes32, Bytes32> trie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        Bytes32 key1 = Bytes32.fromHexString("0x00112233445566778899aabbccddeeff00112233445566778899aabbccddeeff");
+        Bytes32 value1 = Bytes32.fromHexString("0x1000000000000000000000000000000000000000000000000000000000000000");
+        Bytes32 key2 = Bytes32.fromHexString("0x00112233445566778899aabbccddeeff00112233445566778899aabbccddee00");
+        Bytes32 value2 = Bytes32.fromHexString("0x0100000000000000000000000000000000000000000000000000000000000000");
+        Bytes32 key3 = Bytes32.fromHexString("0xff112233445566778899aabbccddeeff00112233445566778899aabbccddee00");
+        Bytes32 value3 = Bytes32.fromHexString("0x0300000000000000000000000000000000000000000000000000000000000000");
+        Bytes32 value4 = Bytes32.fromHexString("0x0400000000000000000000000000000000000000000000000000000000000004");
+        trie.put(key1, value1);
+        trie.put(key2, value2);
+        trie.put(key3, value3);
+        trie.getRootHash();
+        trie.put(key2, value4);
+        trie.put(key3, value1);
+        trie.getRootHash();
+        trie.remove(key1);
+        SimpleVerkleTrie<Bytes32, Bytes32> expectedTrie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        expectedTrie.put(key2, value4);
+        expectedTrie.put(key3, value1);
+        assertThat(trie.getRootHash()).as("Updated root hash").isEqualByComparingTo(expectedTrie.getRootHash());
+    }
+
+    @Test
+    public void testRootHashAfterUpdatesAtSameStem() throws Exception {
+        SimpleVerkleTrie<Bytes32, Bytes32> trie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        Bytes32 key1 = Bytes32.fromHexString("0x00112233445566778899aabbccddeeff00112233445566778899aabbccddeeff");
+        Bytes32 value1 = Bytes32.fromHexString("0x1000000000000000000000000000000000000000000000000000000000000000");
+        Bytes32 key2 = Bytes32.fromHexString("0x00112233445566778899aabbccddeeff00112233445566778899aabbccddee00");
+        Bytes32 value2 = Bytes32.fromHexString("0x0100000000000000000000000000000000000000000000000000000000000000");
+        Bytes32 key3 = Bytes32.fromHexString("0x00112233445566778899aabbccddeeff00112233445566778899aabbccddee80");
+        Bytes32 value3 = Bytes32.fromHexString("0x0300000000000000000000000000000000000000000000000000000000000003");
+        trie.put(key1, value1);
+        trie.put(key2, value2);
+        trie.getRootHash();
+        trie.put(key1, value3);
+        trie.put(key3, value2);
+        trie.getRootHash();
+        trie.put(key3, value1);
+        SimpleVerkleTrie<Bytes32, Bytes32> expectedTrie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        expectedTrie.put(key1, value3);
+        expectedTrie.put(key2, value2);
+        expectedTrie.put(key3, value1);
+        assertThat(trie.getRootHash()).as("Updated root hash").isEqualByComparingTo(expectedTrie.getRootHash());
+    }
+
+    @Test
+    public void testRootHashManyStems() throws Exception {
+        SimpleVerkleTrie<Bytes32, Bytes32> trie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        SimpleVerkleTrie<Bytes32, Bytes32> reversedTrie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        Bytes32[] keys = new Bytes32[16];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = Bytes32.fromHexString(String.format("0x%02x%02x2233445566778899aabbccddeeff00112233445566778899aabbccdd%02x%02x", i % 4, i, i, 8 * i));
+        }
+        for (int i = 0; i < keys.length; i++) {
+            trie.put(keys[i], keys[keys.length - 1 - i]);
+        }
+        for (int i = keys.length - 1; i >= 0; i--) {
+            reversedTrie.put(keys[i], keys[keys.length - 1 - i]);
+        }
+        assertThat(trie.getRootHash()).as("Root hash does not depend on insertion order").isEqualByComparingTo(reversedTrie.getRootHash());
+    }
+
+    @Test
+    public void testParallelRootHash() throws Exception {
+        SimpleVerkleTrie<Bytes32, Bytes32> trie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        SimpleVerkleTrie<Bytes32, Bytes32> parallelTrie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        parallelTrie.setHashVisitor(new ParallelHashVisitor<Bytes32>(ForkJoinPool.commonPool(), 2));
+        for (int i = 0; i < 32; i++) {
+            Bytes32 key = Bytes32.fromHexString(String.format("0x%02x%02x2233445566778899aabbccddeeff00112233445566778899aabbccdd%02x%02x", i % 3, i % 7, i, 5 * i));
+            trie.put(key, key);
+            parallelTrie.put(key, key);
+        }
+        assertThat(parallelTrie.getRootHash()).as("Parallel root hash").isEqualByComparingTo(trie.getRootHash());
+        Bytes32 key = Bytes32.fromHexString("0x01012233445566778899aabbccddeeff00112233445566778899aabbccdd0000");
+        trie.put(key, Bytes32.ZERO);
+        parallelTrie.put(key, Bytes32.ZERO);
+        assertThat(parallelTrie.getRootHash()).as("Updated parallel root hash").isEqualByComparingTo(trie.getRootHash());
+    }
+
+    @Test
+    public void testParallelUpdaterForwardsEveryMethod() throws Exception {
+        List<String> calls = new ArrayList<>();
+        NodeUpdater nodeUpdater = new NodeUpdater() {
+            @Override
+            public void store(Bytes location, Bytes32 hash, Bytes value) {
+                calls.add("store");
+            }
+
+            @Override
+            public void delete(Bytes location) {
+                calls.add("delete");
+            }
+
+            @Override
+            public void storeBatch(NodeWriteBatch batch) {
+                calls.add("storeBatch");
+            }
+        };
+        NodeUpdater updater = new ParallelHashVisitor<Bytes32>().updaterFor(nodeUpdater);
+        updater.store(Bytes.of(1), Bytes32.ZERO, Bytes.of(1));
+        updater.delete(Bytes.of(1));
+        updater.storeBatch(new NodeWriteBatch());
+        assertThat(calls).containsExactly("store", "delete", "storeBatch");
+    }
+
+    @Test
+    public void testPutAll() throws Exception {
+        SimpleVerkleTrie<Bytes32, Bytes32> trie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        SimpleVerkleTrie<Bytes32, Bytes32> batchTrie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        for (int i = 0; i < 48; i++) {
+            Bytes32 key = Bytes32.fromHexString(String.format("0x%02x%02x2233445566778899aabbccddeeff00112233445566778899aabbccdd%02x%02x", i % 3, i % 5, i % 6, i));
+            trie.put(key, key);
+            batchTrie.put(key, key);
+        }
+        TreeMap<Bytes32, Optional<Bytes32>> updates = new TreeMap<>();
+        for (int i = 0; i < 64; i++) {
+            // Updated, inserted and removed keys, in existing and new stems
+            Bytes32 key = Bytes32.fromHexString(String.format("0x%02x%02x2233445566778899aabbccddeeff00112233445566778899aabbccdd%02x%02x", i % 4, i % 5, i % 7, 2 * i));
+            updates.put(key, i % 3 == 0 ? Optional.empty() : Optional.of(Bytes32.leftPad(Bytes.of(i))));
+        }
+        for (var update : updates.entrySet()) {
+            if (update.getValue().isPresent()) {
+                trie.put(update.getKey(), update.getValue().get());
+            } else {
+                trie.remove(update.getKey());
+            }
+        }
+        batchTrie.putAll(updates);
+        for (var update : updates.entrySet()) {
+            assertThat(batchTrie.get(update.getKey())).isEqualTo(update.getValue());
+        }
+        assertThat(batchTrie.getRootHash()).as("Same root hash as single updates").isEqualByComparingTo(trie.getRootHash());
+
+        TreeMap<Bytes32, Optional<Bytes32>> removals = new TreeMap<>();
+        updates.keySet().forEach(key -> removals.put(key, Optional.empty()));
+        batchTrie.putAll(removals);
+        updates.keySet().forEach(key -> trie.remove(key));
+        assertThat(batchTrie.getRootHash()).as("Same root hash after removals").isEqualByComparingTo(trie.getRootHash());
+    }
+
+    @Test
+    public void testPutAllRemovesLegacyStem() throws Exception {
+        // Legacy layout: a branch at stem depth holding its values as leaves
+        Bytes32 key1 = Bytes32.fromHexString("0x00112233445566778899aabbccddeeff00112233445566778899aabbccddee01");
+        Bytes32 key2 = Bytes32.fromHexString("0x00112233445566778899aabbccddeeff00112233445566778899aabbccddee02");
+        Bytes32 otherKey = Bytes32.fromHexString("0xff112233445566778899aabbccddeeff00112233445566778899aabbccddeeff");
+        Bytes32 value = Bytes32.fromHexString("0x1000000000000000000000000000000000000000000000000000000000000000");
+        List<Node<Bytes32>> values = new ArrayList<>();
+        List<Node<Bytes32>> rootChildren = new ArrayList<>();
+        for (int i = 0; i < BranchNode.maxChild(); i++) {
+            values.add(NullNode.instance());
+            rootChildren.add(NullNode.instance());
+        }
+        values.set(1, new LeafNode<Bytes32>(Optional.of(key1), value, Bytes.EMPTY));
+        values.set(2, new LeafNode<Bytes32>(Optional.of(key2), value, Bytes.EMPTY));
+        rootChildren.set(0, new BranchNode<Bytes32>(Optional.of(Bytes.of(0)), key1.slice(1, 30), values));
+        rootChildren.set(0xff, new LeafNode<Bytes32>(Optional.of(Bytes.of(0xff)), value, otherKey.slice(1)));
+        SimpleVerkleTrie<Bytes32, Bytes32> trie = new SimpleVerkleTrie<Bytes32, Bytes32>(
+            new BranchNode<Bytes32>(Optional.of(Bytes.EMPTY), Bytes.EMPTY, rootChildren));
+
+        TreeMap<Bytes32, Optional<Bytes32>> removals = new TreeMap<>();
+        removals.put(key1, Optional.empty());
+        removals.put(key2, Optional.empty());
+        trie.putAll(removals);
+        assertThat(trie.get(key1)).isEmpty();
+        assertThat(trie.get(key2)).isEmpty();
+        assertThat(trie.get(otherKey)).contains(value);
+        SimpleVerkleTrie<Bytes32, Bytes32> expectedTrie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        expectedTrie.put(otherKey, value);
+        assertThat(trie.getRootHash()).as("No empty branch left").isEqualTo(expectedTrie.getRootHash());
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        SimpleVerkleTrie<Bytes32, Bytes32> trie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        SimpleVerkleTrie<Bytes32, Bytes32> expectedTrie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        Bytes32[] keys = new Bytes32[32];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = Bytes32.fromHexString(String.format("0x%02x%02x2233445566778899aabbccddeeff00112233445566778899aabbccdd%02x%02x", i % 3, i % 5, i % 4, i));
+            trie.put(keys[i], keys[i]);
+        }
+        // Snapshot of a trie that is not hashed yet
+        SimpleVerkleTrie<Bytes32, Bytes32> snapshot = trie.snapshot();
+        for (int i = 0; i < keys.length; i += 2) {
+            trie.put(keys[i], Bytes32.ZERO);
+            trie.remove(keys[i + 1]);
+        }
+        Bytes32 hash = trie.getRootHash();
+        SimpleVerkleTrie<Bytes32, Bytes32> hashedSnapshot = trie.snapshot();
+        TreeMap<Bytes32, Optional<Bytes32>> updates = new TreeMap<>();
+        for (int i = 0; i < keys.length; i += 2) {
+            updates.put(keys[i], Optional.empty());
+        }
+        trie.putAll(updates);
+
+        for (int i = 0; i < keys.length; i++) {
+            assertThat(snapshot.get(keys[i])).contains(keys[i]);
+            expectedTrie.put(keys[i], keys[i]);
+        }
+        assertThat(snapshot.getRootHash()).isEqualByComparingTo(expectedTrie.getRootHash());
+        assertThat(hashedSnapshot.getRootHash()).isEqualByComparingTo(hash);
+        assertThat(trie.getRootHash()).isEqualByComparingTo(Bytes32.ZERO);
+
+        // Snapshots can be updated too, without affecting each other
+        snapshot.put(keys[0], Bytes32.ZERO);
+        snapshot.remove(keys[1]);
+        assertThat(hashedSnapshot.get(keys[0])).contains(Bytes32.ZERO);
+        assertThat(hashedSnapshot.get(keys[1])).isEmpty();
+        assertThat(hashedSnapshot.get(keys[3])).isEmpty();
+        assertThat(hashedSnapshot.getRootHash()).isEqualByComparingTo(hash);
+        assertThat(snapshot.get(keys[3])).contains(keys[3]);
+    }
+
+    @Test
+    public void testGetRemoveMissingKeys() throws Exception {
+        SimpleVerkleTrie<Bytes32, Bytes32> trie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        Bytes32 key1 = Bytes32.fromHexString("0x00112233445566778899aabbccddeeff00112233445566778899aabbccddeeff");
+        Bytes32 key2 = Bytes32.fromHexString("0x00112233445566778899aabbccddeeff00112233445566778899aabbccddee00");
+        Bytes32 inExtension = Bytes32.fromHexString("0x00112233445566778899aabbccddeeff00112233445566778899aabbcc00ee00");
+        Bytes32 inLeaf = Bytes32.fromHexString("0x00112233445566778899aabbccddeeff00112233445566778899aabbccddee01");
+        Bytes32 inRoot = Bytes32.fromHexString("0xff112233445566778899aabbccddeeff00112233445566778899aabbccddee00");
+        trie.put(key1, key1);
+        trie.put(key2, key2);
+        Bytes32 rootHash = trie.getRootHash();
+        assertThat(trie.get(inExtension)).as("Diverges in the extension").isEqualTo(Optional.empty());
+        assertThat(trie.get(inLeaf)).as("Diverges at the last byte").isEqualTo(Optional.empty());
+        assertThat(trie.get(inRoot)).as("Diverges at the root").isEqualTo(Optional.empty());
+        trie.remove(inExtension);
+        trie.remove(inLeaf);
+        trie.remove(inRoot);
+        assertThat(trie.getRootHash()).as("Removing missing keys keeps the root hash").isEqualByComparingTo(rootHash);
+        assertThat(trie.get(key1)).isEqualTo(Optional.of(key1));
+        assertThat(trie.get(key2)).isEqualTo(Optional.of(key2));
+    }
+
+    @Test
+    public void testRehashWithoutIncrementalUpdates() throws Exception {
+        Bytes32 key1 = Bytes32.fromHexString("0x00112233445566778899aabbccddeeff00112233445566778899aabbccddeeff");
+        Bytes32 key2 = Bytes32.fromHexString("0x00112233445566778899aabbccddeeff00112233445566778899aabbccddee00");
+        Bytes32 key3 = Bytes32.fromHexString("0xff112233445566778899aabbccddeeff00112233445566778899aabbccddee00");
+        SimpleVerkleTrie<Bytes32, Bytes32> trie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        HashVisitor<Bytes32> hashVisitor = new HashVisitor<Bytes32>();
+        hashVisitor.hasher = new SHA256Hasher();
+        trie.setHashVisitor(hashVisitor);
+        trie.put(key1, key1);
+        trie.put(key3, key3);
+        trie.getRootHash();
+        trie.put(key1, key2);
+        trie.put(key2, key2);
+
+        SimpleVerkleTrie<Bytes32, Bytes32> expectedTrie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        HashVisitor<Bytes32> expectedHashVisitor = new HashVisitor<Bytes32>();
+        expectedHashVisitor.hasher = new SHA256Hasher();
+        expectedTrie.setHashVisitor(expectedHashVisitor);
+        expectedTrie.put(key1, key2);
+        expectedTrie.put(key2, key2);
+        expectedTrie.put(key3, key3);
+        assertThat(trie.getRootHash()).as("Commitments are recomputed").isEqualTo(expectedTrie.getRootHash());
+    }
 }
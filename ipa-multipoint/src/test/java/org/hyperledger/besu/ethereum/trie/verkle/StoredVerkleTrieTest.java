@@ -1,5 +1,14 @@
 package org.hyperledger.besu.ethereum.trie.verkle;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
 import org.junit.jupiter.api.Test;
 import static org.assertj.core.api.Assertions.*;
 
@@ -143,4 +152,644 @@ public class StoredVerkleTrieTest {
         assertThat(storedTrie.get(key2).orElse(null)).isEqualTo(value2);
         assertThat(storedTrie.get(key3).orElse(null)).isEqualTo(value3);
     }
+
+    @Test
+    public void testUpdateStoredTrie() throws Exception {
+        NodeUpdaterMock nodeUpdater = new NodeUpdaterMock();
+        NodeLoaderMock nodeLoader = new NodeLoaderMock(nodeUpdater.storage);
+        StoredNodeFactory<Bytes32> nodeFactory = new StoredNodeFactory<>(nodeLoader, value -> (Bytes32) value);
+        SimpleVerkleTrie<Bytes32, Bytes32> trie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        Bytes32 key1 = Bytes32.fromHexString("0x00112233445566778899aabbccddeeff00112233445566778899aabbccddeeff");
+        Bytes32 value1 = Bytes32.fromHexString("0x1000000000000000000000000000000000000000000000000000000000000000");
+        Bytes32 key2 = Bytes32.fromHexString("0x00ff112233445566778899aabbccddeeff00112233445566778899aabbccddee");
+        Bytes32 value2 = Bytes32.fromHexString("0x0200000000000000000000000000000000000000000000000000000000000000");
+        Bytes32 key3 = Bytes32.fromHexString("0x00ff112233445566778899aabbccddeeff00112233445566778899aabbccddff");
+        Bytes32 value3 = Bytes32.fromHexString("0x0300000000000000000000000000000000000000000000000000000000000000");
+        trie.put(key1, value1);
+        trie.put(key2, value2);
+        trie.put(key3, value3);
+        trie.commit(nodeUpdater);
+
+        Node<Bytes32> storedRoot = nodeFactory.retrieve(Bytes.EMPTY, Bytes32.ZERO).get();
+        SimpleVerkleTrie<Bytes32, Bytes32> storedTrie = new SimpleVerkleTrie<Bytes32, Bytes32>(storedRoot);
+        assertThat(storedTrie.getRootHash()).as("Stored root hash").isEqualTo(trie.getRootHash());
+        storedTrie.put(key2, value1);
+        trie.put(key2, value1);
+        assertThat(storedTrie.getRootHash()).as("Updated stored root hash").isEqualTo(trie.getRootHash());
+    }
+
+    @Test
+    public void testCommitOnlyDirtyNodes() throws Exception {
+        NodeUpdaterMock nodeUpdater = new NodeUpdaterMock();
+        SimpleVerkleTrie<Bytes32, Bytes32> trie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        Bytes32 key1 = Bytes32.fromHexString("0x00112233445566778899aabbccddeeff00112233445566778899aabbccddeeff");
+        Bytes32 value1 = Bytes32.fromHexString("0x1000000000000000000000000000000000000000000000000000000000000000");
+        Bytes32 key2 = Bytes32.fromHexString("0xff112233445566778899aabbccddeeff00112233445566778899aabbccddee00");
+        Bytes32 value2 = Bytes32.fromHexString("0x0100000000000000000000000000000000000000000000000000000000000000");
+        trie.put(key1, value1);
+        trie.put(key2, value2);
+        trie.commit(nodeUpdater);
+
+        NodeUpdaterMock secondUpdater = new NodeUpdaterMock();
+        trie.put(key2, value1);
+        trie.commit(secondUpdater);
+        assertThat(secondUpdater.storage.keySet()).as("Only the updated path is stored")
+            .containsExactlyInAnyOrder(Bytes.EMPTY, Bytes.of(0xff));
+    }
+
+    @Test
+    public void testCommitStoresHashes() throws Exception {
+        Bytes32 key1 = Bytes32.fromHexString("0x00112233445566778899aabbccddeeff00112233445566778899aabbccddeeff");
+        Bytes32 value1 = Bytes32.fromHexString("0x1000000000000000000000000000000000000000000000000000000000000000");
+        Bytes32 key2 = Bytes32.fromHexString("0xff112233445566778899aabbccddeeff00112233445566778899aabbccddee00");
+        Bytes32 value2 = Bytes32.fromHexString("0x0100000000000000000000000000000000000000000000000000000000000000");
+        Bytes32 key3 = Bytes32.fromHexString("0xff112233445566778899aabbccddeeff00112233445566778899aabbccddee01");
+        NodeUpdaterMock nodeUpdater = new NodeUpdaterMock();
+        SimpleVerkleTrie<Bytes32, Bytes32> trie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        trie.put(key1, value1);
+        trie.put(key2, value2);
+        // Hashed before being committed: the node at 0x00 is then only left to store
+        trie.getRootHash();
+        trie.put(key3, value1);
+        trie.commit(nodeUpdater);
+
+        NodeUpdaterMock expectedUpdater = new NodeUpdaterMock();
+        SimpleVerkleTrie<Bytes32, Bytes32> expectedTrie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        expectedTrie.put(key1, value1);
+        expectedTrie.put(key2, value2);
+        expectedTrie.put(key3, value1);
+        expectedTrie.commit(expectedUpdater);
+        assertThat(nodeUpdater.storage).isEqualTo(expectedUpdater.storage);
+        assertThat(nodeUpdater.hashes.get(Bytes.EMPTY)).isEqualTo(trie.getRootHash());
+        assertThat(nodeUpdater.hashes.get(Bytes.of(0x00))).isNotNull();
+        assertThat(nodeUpdater.hashes.get(Bytes.of(0xff))).isNotNull();
+    }
+
+    @Test
+    public void testCommitStoresOneSortedBatch() throws Exception {
+        Bytes32 key1 = Bytes32.fromHexString("0x00112233445566778899aabbccddeeff00112233445566778899aabbccddeeff");
+        Bytes32 key2 = Bytes32.fromHexString("0xff112233445566778899aabbccddeeff00112233445566778899aabbccddee00");
+        Bytes32 key3 = Bytes32.fromHexString("0xff002233445566778899aabbccddeeff00112233445566778899aabbccddee01");
+        Bytes32 value = Bytes32.fromHexString("0x1000000000000000000000000000000000000000000000000000000000000000");
+        List<List<Bytes>> batches = new ArrayList<>();
+        NodeUpdater batchUpdater = new NodeUpdater() {
+            @Override
+            public void store(Bytes location, Bytes32 hash, Bytes encoded) {
+                fail("Node stored outside of a batch");
+            }
+
+            @Override
+            public void storeBatch(NodeWriteBatch batch) {
+                List<Bytes> locations = new ArrayList<>();
+                batch.getNodes().forEach(entry -> locations.add(entry.getLocation()));
+                batches.add(locations);
+            }
+        };
+        SimpleVerkleTrie<Bytes32, Bytes32> trie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        trie.put(key1, value);
+        trie.put(key2, value);
+        trie.put(key3, value);
+        trie.commit(batchUpdater);
+
+        NodeUpdaterMock nodeUpdater = new NodeUpdaterMock();
+        SimpleVerkleTrie<Bytes32, Bytes32> expectedTrie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        expectedTrie.put(key1, value);
+        expectedTrie.put(key2, value);
+        expectedTrie.put(key3, value);
+        expectedTrie.commit(nodeUpdater);
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0)).containsExactlyInAnyOrderElementsOf(nodeUpdater.storage.keySet());
+        assertThat(batches.get(0)).isSortedAccordingTo(NodeWriteBatch::compareLocations);
+        assertThat(batches.get(0).get(0)).isEqualTo(Bytes.EMPTY);
+
+        // Nothing left to store
+        trie.commit(batchUpdater);
+        assertThat(batches).hasSize(1);
+    }
+
+    @Test
+    public void testSplitStoredTrie() throws Exception {
+        NodeUpdaterMock nodeUpdater = new NodeUpdaterMock();
+        NodeLoaderMock nodeLoader = new NodeLoaderMock(nodeUpdater.storage);
+        StoredNodeFactory<Bytes32> nodeFactory = new StoredNodeFactory<>(nodeLoader, value -> (Bytes32) value);
+        SimpleVerkleTrie<Bytes32, Bytes32> trie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        Bytes32 key1 = Bytes32.fromHexString("0x00ff112233445566778899aabbccddeeff00112233445566778899aabbccddee");
+        Bytes32 value1 = Bytes32.fromHexString("0x1000000000000000000000000000000000000000000000000000000000000000");
+        Bytes32 key2 = Bytes32.fromHexString("0x00ff112233445566778899aabbccddeeff00112233445566778899aabbccddff");
+        Bytes32 value2 = Bytes32.fromHexString("0x0200000000000000000000000000000000000000000000000000000000000000");
+        Bytes32 key3 = Bytes32.fromHexString("0x00112233445566778899aabbccddeeff00112233445566778899aabbccddeeff");
+        Bytes32 value3 = Bytes32.fromHexString("0x0300000000000000000000000000000000000000000000000000000000000000");
+        trie.put(key1, value1);
+        trie.put(key2, value2);
+        trie.commit(nodeUpdater);
+        trie.put(key3, value3);
+        trie.commit(nodeUpdater);
+
+        Node<Bytes32> storedRoot = nodeFactory.retrieve(Bytes.EMPTY, Bytes32.ZERO).get();
+        SimpleVerkleTrie<Bytes32, Bytes32> storedTrie = new SimpleVerkleTrie<Bytes32, Bytes32>(storedRoot);
+        assertThat(storedTrie.get(key1).orElse(null)).isEqualTo(value1);
+        assertThat(storedTrie.get(key2).orElse(null)).isEqualTo(value2);
+        assertThat(storedTrie.get(key3).orElse(null)).isEqualTo(value3);
+        assertThat(storedTrie.getRootHash()).isEqualTo(trie.getRootHash());
+    }
+
+    @Test
+    public void testLazyLoading() throws Exception {
+        NodeUpdaterMock nodeUpdater = new NodeUpdaterMock();
+        NodeLoaderMock nodeLoader = new NodeLoaderMock(nodeUpdater.storage);
+        StoredNodeFactory<Bytes32> nodeFactory = new StoredNodeFactory<>(nodeLoader, value -> (Bytes32) value);
+        SimpleVerkleTrie<Bytes32, Bytes32> trie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        Bytes32 key1 = Bytes32.fromHexString("0x00112233445566778899aabbccddeeff00112233445566778899aabbccddeeff");
+        Bytes32 value1 = Bytes32.fromHexString("0x1000000000000000000000000000000000000000000000000000000000000000");
+        Bytes32 key2 = Bytes32.fromHexString("0x00ff112233445566778899aabbccddeeff00112233445566778899aabbccddee");
+        Bytes32 value2 = Bytes32.fromHexString("0x0200000000000000000000000000000000000000000000000000000000000000");
+        Bytes32 key3 = Bytes32.fromHexString("0x00ff112233445566778899aabbccddeeff00112233445566778899aabbccddff");
+        Bytes32 value3 = Bytes32.fromHexString("0x0300000000000000000000000000000000000000000000000000000000000000");
+        trie.put(key1, value1);
+        trie.put(key2, value2);
+        trie.put(key3, value3);
+        trie.commit(nodeUpdater);
+
+        Node<Bytes32> storedRoot = nodeFactory.retrieve(Bytes.EMPTY, null).get();
+        assertThat(nodeLoader.loadCount).as("Only the root is loaded").isEqualTo(1);
+        SimpleVerkleTrie<Bytes32, Bytes32> storedTrie = new SimpleVerkleTrie<Bytes32, Bytes32>(storedRoot);
+        assertThat(storedTrie.get(key2).orElse(null)).isEqualTo(value2);
+        assertThat(nodeLoader.loadCount).as("Only the path to the stem holding the value is loaded").isEqualTo(2);
+    }
+
+    @Test
+    public void testReleaseLoadedNodes() throws Exception {
+        NodeUpdaterMock nodeUpdater = new NodeUpdaterMock();
+        NodeLoaderMock nodeLoader = new NodeLoaderMock(nodeUpdater.storage);
+        StoredNodeFactory<Bytes32> nodeFactory = new StoredNodeFactory<>(nodeLoader, value -> (Bytes32) value);
+        SimpleVerkleTrie<Bytes32, Bytes32> trie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        Bytes32 key1 = Bytes32.fromHexString("0x00112233445566778899aabbccddeeff00112233445566778899aabbccddeeff");
+        Bytes32 value1 = Bytes32.fromHexString("0x1000000000000000000000000000000000000000000000000000000000000000");
+        Bytes32 key2 = Bytes32.fromHexString("0xff112233445566778899aabbccddeeff00112233445566778899aabbccddee00");
+        Bytes32 value2 = Bytes32.fromHexString("0x0200000000000000000000000000000000000000000000000000000000000000");
+        trie.put(key1, value1);
+        trie.put(key2, value2);
+        trie.commit(nodeUpdater);
+
+        SimpleVerkleTrie<Bytes32, Bytes32> storedTrie =
+            new SimpleVerkleTrie<Bytes32, Bytes32>(nodeFactory.retrieve(Bytes.EMPTY, null).get());
+        StoredNode<Bytes32> child = (StoredNode<Bytes32>) storedTrie.getRoot().getChildren().get(0x00);
+        assertThat(storedTrie.get(key1)).contains(value1);
+        assertThat(child.isLoaded()).isTrue();
+        storedTrie.commit(new NodeUpdaterMock());
+        assertThat(child.isLoaded()).as("Released on commit").isFalse();
+        int loadCount = nodeLoader.loadCount;
+        assertThat(storedTrie.get(key1)).contains(value1);
+        assertThat(nodeLoader.loadCount).as("Loaded again through the loader").isEqualTo(loadCount + 1);
+
+        // Nodes loaded by readers of a view are released when the next view is published
+        ConcurrentVerkleTrie<Bytes32, Bytes32> concurrentTrie =
+            new ConcurrentVerkleTrie<Bytes32, Bytes32>(nodeFactory.retrieve(Bytes.EMPTY, null).get());
+        assertThat(concurrentTrie.getView().get(key2)).contains(value2);
+        loadCount = nodeLoader.loadCount;
+        concurrentTrie.getRootHash();
+        assertThat(concurrentTrie.getView().get(key2)).contains(value2);
+        assertThat(nodeLoader.loadCount).isEqualTo(loadCount + 1);
+    }
+
+    @Test
+    public void testRehashLoadsChildrenOnlyWithoutIncrementalUpdates() throws Exception {
+        Bytes32 value = Bytes32.fromHexString("0x1000000000000000000000000000000000000000000000000000000000000000");
+        Bytes32 updatedKey = Bytes32.fromHexString("0x00112233445566778899aabbccddeeff00112233445566778899aabbccddee00");
+        for (boolean incremental : new boolean[] {true, false}) {
+            HashVisitor<Bytes32> hashVisitor = new HashVisitor<Bytes32>();
+            if (!incremental) {
+                hashVisitor.hasher = new SHA256Hasher();
+            }
+            NodeUpdaterMock nodeUpdater = new NodeUpdaterMock();
+            NodeLoaderMock nodeLoader = new NodeLoaderMock(nodeUpdater.storage);
+            StoredNodeFactory<Bytes32> nodeFactory = new StoredNodeFactory<>(nodeLoader, v -> (Bytes32) v);
+            SimpleVerkleTrie<Bytes32, Bytes32> trie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+            trie.setHashVisitor(hashVisitor);
+            // 16 children of the root
+            for (int i = 0; i < 16; i++) {
+                trie.put(Bytes32.rightPad(Bytes.of(i * 16)), value);
+            }
+            trie.commit(nodeUpdater);
+
+            SimpleVerkleTrie<Bytes32, Bytes32> storedTrie =
+                new SimpleVerkleTrie<Bytes32, Bytes32>(nodeFactory.retrieve(Bytes.EMPTY, null).get());
+            storedTrie.setHashVisitor(hashVisitor);
+            storedTrie.put(updatedKey, value);
+            int loadCount = nodeLoader.loadCount;
+            storedTrie.getRootHash();
+            if (incremental) {
+                assertThat(nodeLoader.loadCount).as("Updated from the stored commitment").isEqualTo(loadCount);
+            } else {
+                assertThat(nodeLoader.loadCount).as("Every other child is loaded").isEqualTo(loadCount + 15);
+            }
+        }
+    }
+
+    @Test
+    public void testCachedLoading() throws Exception {
+        NodeUpdaterMock nodeUpdater = new NodeUpdaterMock();
+        NodeLoaderMock nodeLoader = new NodeLoaderMock(nodeUpdater.storage);
+        NodeCache nodeCache = new NodeCache(1 << 20);
+        StoredNodeFactory<Bytes32> nodeFactory = new StoredNodeFactory<>(nodeLoader, value -> (Bytes32) value, nodeCache);
+        SimpleVerkleTrie<Bytes32, Bytes32> trie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        Bytes32 key1 = Bytes32.fromHexString("0x00112233445566778899aabbccddeeff00112233445566778899aabbccddeeff");
+        Bytes32 value1 = Bytes32.fromHexString("0x1000000000000000000000000000000000000000000000000000000000000000");
+        Bytes32 key2 = Bytes32.fromHexString("0x00ff112233445566778899aabbccddeeff00112233445566778899aabbccddee");
+        Bytes32 value2 = Bytes32.fromHexString("0x0200000000000000000000000000000000000000000000000000000000000000");
+        trie.put(key1, value1);
+        trie.put(key2, value2);
+        trie.commit(nodeUpdater);
+
+        SimpleVerkleTrie<Bytes32, Bytes32> storedTrie =
+            new SimpleVerkleTrie<Bytes32, Bytes32>(nodeFactory.retrieve(Bytes.EMPTY, null).get());
+        assertThat(storedTrie.get(key2).orElse(null)).isEqualTo(value2);
+        assertThat(nodeLoader.loadCount).isEqualTo(2);
+        SimpleVerkleTrie<Bytes32, Bytes32> cachedTrie =
+            new SimpleVerkleTrie<Bytes32, Bytes32>(nodeFactory.retrieve(Bytes.EMPTY, null).get());
+        assertThat(cachedTrie.get(key2).orElse(null)).isEqualTo(value2);
+        assertThat(nodeLoader.loadCount).as("Second traversal is served by the cache").isEqualTo(2);
+        assertThat(nodeCache.getHitCount()).isEqualTo(2);
+        assertThat(nodeCache.getMissCount()).isEqualTo(2);
+
+        // Committing through the cache refreshes the records
+        Bytes32 value3 = Bytes32.fromHexString("0x0300000000000000000000000000000000000000000000000000000000000000");
+        cachedTrie.put(key2, value3);
+        cachedTrie.commit(nodeCache.updater(nodeUpdater));
+        SimpleVerkleTrie<Bytes32, Bytes32> updatedTrie =
+            new SimpleVerkleTrie<Bytes32, Bytes32>(nodeFactory.retrieve(Bytes.EMPTY, null).get());
+        assertThat(updatedTrie.get(key2).orElse(null)).isEqualTo(value3);
+        assertThat(updatedTrie.getRootHash()).isEqualTo(cachedTrie.getRootHash());
+    }
+
+    @Test
+    public void testPrefetch() throws Exception {
+        NodeUpdaterMock nodeUpdater = new NodeUpdaterMock();
+        NodeLoaderMock nodeLoader = new NodeLoaderMock(nodeUpdater.storage);
+        StoredNodeFactory<Bytes32> nodeFactory =
+            new StoredNodeFactory<>(nodeLoader, value -> (Bytes32) value, new NodeCache(1 << 20));
+        SimpleVerkleTrie<Bytes32, Bytes32> trie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        Bytes32 key1 = Bytes32.fromHexString("0x00112233445566778899aabbccddeeff00112233445566778899aabbccddeeff");
+        Bytes32 value1 = Bytes32.fromHexString("0x1000000000000000000000000000000000000000000000000000000000000000");
+        Bytes32 key2 = Bytes32.fromHexString("0x00ff112233445566778899aabbccddeeff00112233445566778899aabbccddee");
+        Bytes32 value2 = Bytes32.fromHexString("0x0200000000000000000000000000000000000000000000000000000000000000");
+        Bytes32 key3 = Bytes32.fromHexString("0x00ff112233445566778899aabbccddeeff00112233445566778899aabbccddff");
+        Bytes32 value3 = Bytes32.fromHexString("0x0300000000000000000000000000000000000000000000000000000000000000");
+        Bytes32 key4 = Bytes32.fromHexString("0xff112233445566778899aabbccddeeff00112233445566778899aabbccddeeff");
+        Bytes32 value4 = Bytes32.fromHexString("0x0400000000000000000000000000000000000000000000000000000000000000");
+        Bytes32 missingKey = Bytes32.fromHexString("0x0022334455667788990011223344556677889900112233445566778899aabbcc");
+        trie.put(key1, value1);
+        trie.put(key2, value2);
+        trie.put(key3, value3);
+        trie.put(key4, value4);
+        trie.commit(nodeUpdater);
+
+        nodeFactory.prefetch(List.of(key1, key3, key4, missingKey));
+        assertThat(nodeLoader.batchCount).as("One batch per level").isEqualTo(3);
+        int loadCount = nodeLoader.loadCount;
+        SimpleVerkleTrie<Bytes32, Bytes32> storedTrie =
+            new SimpleVerkleTrie<Bytes32, Bytes32>(nodeFactory.retrieve(Bytes.EMPTY, null).get());
+        assertThat(storedTrie.get(key1).orElse(null)).isEqualTo(value1);
+        assertThat(storedTrie.get(key3).orElse(null)).isEqualTo(value3);
+        assertThat(storedTrie.get(key4).orElse(null)).isEqualTo(value4);
+        assertThat(storedTrie.get(missingKey)).isEmpty();
+        assertThat(nodeLoader.loadCount).as("Prefetched paths are served by the cache").isEqualTo(loadCount);
+    }
+
+    @Test
+    public void testAsyncLoading() throws Exception {
+        NodeUpdaterMock nodeUpdater = new NodeUpdaterMock();
+        SimpleVerkleTrie<Bytes32, Bytes32> trie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        Bytes32 key1 = Bytes32.fromHexString("0x00112233445566778899aabbccddeeff00112233445566778899aabbccddeeff");
+        Bytes32 value1 = Bytes32.fromHexString("0x1000000000000000000000000000000000000000000000000000000000000000");
+        Bytes32 key2 = Bytes32.fromHexString("0xff112233445566778899aabbccddeeff00112233445566778899aabbccddeeff");
+        Bytes32 value2 = Bytes32.fromHexString("0x0200000000000000000000000000000000000000000000000000000000000000");
+        trie.put(key1, value1);
+        trie.put(key2, value2);
+        trie.commit(nodeUpdater);
+
+        // Both children of the root wait for each other, so they only load if their loads overlap
+        CountDownLatch siblings = new CountDownLatch(2);
+        NodeLoader blockingLoader = (location, hash) -> {
+            if (location.size() == 1) {
+                siblings.countDown();
+                try {
+                    if (!siblings.await(10, TimeUnit.SECONDS)) {
+                        throw new IllegalStateException("Siblings loaded one at a time");
+                    }
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return Optional.ofNullable(nodeUpdater.storage.get(location));
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            StoredNodeFactory<Bytes32> nodeFactory = new StoredNodeFactory<>(
+                new AsyncNodeLoader(blockingLoader, executor), value -> (Bytes32) value, new NodeCache(1 << 20));
+            nodeFactory.prefetch(List.of(key1, key2));
+            SimpleVerkleTrie<Bytes32, Bytes32> storedTrie =
+                new SimpleVerkleTrie<Bytes32, Bytes32>(nodeFactory.retrieve(Bytes.EMPTY, null).get());
+            assertThat(storedTrie.get(key1)).contains(value1);
+            assertThat(storedTrie.get(key2)).contains(value2);
+            assertThat(storedTrie.getRootHash()).isEqualTo(trie.getRootHash());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testAsyncLoadingOfSiblings() throws Exception {
+        NodeUpdaterMock nodeUpdater = new NodeUpdaterMock();
+        SimpleVerkleTrie<Bytes32, Bytes32> trie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        HashVisitor<Bytes32> hashVisitor = new HashVisitor<Bytes32>();
+        hashVisitor.hasher = new SHA256Hasher();
+        trie.setHashVisitor(hashVisitor);
+        Bytes32 value = Bytes32.fromHexString("0x1000000000000000000000000000000000000000000000000000000000000000");
+        for (int i = 0; i < 3; i++) {
+            trie.put(Bytes32.rightPad(Bytes.of(i * 16)), value);
+        }
+        trie.commit(nodeUpdater);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            // Updates under two children of the root, and a rehash reading the two children left unchanged by a put
+            for (boolean rehash : new boolean[] {false, true}) {
+                CountDownLatch siblings = new CountDownLatch(2);
+                Bytes updated = rehash ? Bytes.of(0) : null;
+                NodeLoader blockingLoader = (location, hash) -> {
+                    if (location.size() == 1 && !location.equals(updated)) {
+                        siblings.countDown();
+                        try {
+                            if (!siblings.await(10, TimeUnit.SECONDS)) {
+                                throw new IllegalStateException("Siblings loaded one at a time");
+                            }
+                        } catch (InterruptedException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                    return Optional.ofNullable(nodeUpdater.storage.get(location));
+                };
+                StoredNodeFactory<Bytes32> nodeFactory = new StoredNodeFactory<>(
+                    new AsyncNodeLoader(blockingLoader, executor), v -> (Bytes32) v);
+                SimpleVerkleTrie<Bytes32, Bytes32> storedTrie =
+                    new SimpleVerkleTrie<Bytes32, Bytes32>(nodeFactory.retrieve(Bytes.EMPTY, null).get());
+                storedTrie.setHashVisitor(hashVisitor);
+                SimpleVerkleTrie<Bytes32, Bytes32> expectedTrie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+                expectedTrie.setHashVisitor(hashVisitor);
+                for (int i = 0; i < 3; i++) {
+                    expectedTrie.put(Bytes32.rightPad(Bytes.of(i * 16)), value);
+                }
+                if (rehash) {
+                    Bytes32 key = Bytes32.rightPad(Bytes.of(0, 1));
+                    storedTrie.put(key, value);
+                    expectedTrie.put(key, value);
+                } else {
+                    TreeMap<Bytes32, Optional<Bytes32>> updates = new TreeMap<>();
+                    updates.put(Bytes32.rightPad(Bytes.of(0x10, 1)), Optional.of(value));
+                    updates.put(Bytes32.rightPad(Bytes.of(0x20, 1)), Optional.of(value));
+                    storedTrie.putAll(updates);
+                    updates.forEach((key, update) -> expectedTrie.put(key, update.get()));
+                }
+                assertThat(storedTrie.getRootHash()).isEqualTo(expectedTrie.getRootHash());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testPutAllOnStoredTrie() throws Exception {
+        NodeUpdaterMock nodeUpdater = new NodeUpdaterMock();
+        NodeLoaderMock nodeLoader = new NodeLoaderMock(nodeUpdater.storage);
+        StoredNodeFactory<Bytes32> nodeFactory = new StoredNodeFactory<>(nodeLoader, value -> (Bytes32) value);
+        SimpleVerkleTrie<Bytes32, Bytes32> trie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        for (int i = 0; i < 16; i++) {
+            Bytes32 key = Bytes32.fromHexString(String.format("0x%02x112233445566778899aabbccddeeff00112233445566778899aabbccdd%02x", i % 4, i));
+            trie.put(key, key);
+        }
+        trie.commit(nodeUpdater);
+
+        TreeMap<Bytes32, Optional<Bytes32>> updates = new TreeMap<>();
+        for (int i = 0; i < 24; i++) {
+            Bytes32 key = Bytes32.fromHexString(String.format("0x%02x112233445566778899aabbccddeeff00112233445566778899aabbccdd%02x", i % 5, i));
+            updates.put(key, i % 2 == 0 ? Optional.empty() : Optional.of(Bytes32.ZERO));
+        }
+        SimpleVerkleTrie<Bytes32, Bytes32> storedTrie =
+            new SimpleVerkleTrie<Bytes32, Bytes32>(nodeFactory.retrieve(Bytes.EMPTY, null).get());
+        storedTrie.putAll(updates);
+        updates.forEach((key, value) -> value.ifPresentOrElse(v -> trie.put(key, v), () -> trie.remove(key)));
+        assertThat(storedTrie.getRootHash()).isEqualByComparingTo(trie.getRootHash());
+        storedTrie.commit(nodeUpdater);
+        SimpleVerkleTrie<Bytes32, Bytes32> reloadedTrie =
+            new SimpleVerkleTrie<Bytes32, Bytes32>(nodeFactory.retrieve(Bytes.EMPTY, null).get());
+        updates.forEach((key, value) -> assertThat(reloadedTrie.get(key)).isEqualTo(value));
+    }
+
+    @Test
+    public void testStreamingBuilder() throws Exception {
+        NodeUpdaterMock nodeUpdater = new NodeUpdaterMock();
+        SimpleVerkleTrie<Bytes32, Bytes32> trie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        NodeUpdaterMock builderUpdater = new NodeUpdaterMock();
+        NodeLoaderMock nodeLoader = new NodeLoaderMock(builderUpdater.storage);
+        StoredNodeFactory<Bytes32> nodeFactory = new StoredNodeFactory<>(nodeLoader, value -> (Bytes32) value);
+        StreamingTrieBuilder<Bytes32> builder = new StreamingTrieBuilder<>(builderUpdater, nodeFactory);
+        TreeMap<Bytes32, Bytes32> entries = new TreeMap<>();
+        for (int i = 0; i < 64; i++) {
+            Bytes32 key = Bytes32.fromHexString(String.format("0x%02x%02x2233445566778899aabbccddeeff00112233445566778899aabbccdd%02x%02x", i % 3, i % 5, i % 6, i));
+            entries.put(key, key);
+            trie.put(key, key);
+        }
+        builder.putAll(entries.entrySet().iterator());
+        Node<Bytes32> root = builder.build();
+        trie.commit(nodeUpdater);
+
+        assertThat(nodeLoader.loadCount).as("Nothing is loaded while building").isZero();
+        assertThat(root.getHash().get()).isEqualByComparingTo(trie.getRootHash());
+        assertThat(builderUpdater.storage).as("Same nodes as a committed trie").isEqualTo(nodeUpdater.storage);
+        SimpleVerkleTrie<Bytes32, Bytes32> builtTrie = new SimpleVerkleTrie<Bytes32, Bytes32>(root);
+        entries.forEach((key, value) -> assertThat(builtTrie.get(key)).contains(value));
+        assertThatThrownBy(() -> builder.put(Bytes32.ZERO, Bytes32.ZERO)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void testRemoveFromStoredTrie() throws Exception {
+        NodeUpdaterMock nodeUpdater = new NodeUpdaterMock();
+        NodeLoaderMock nodeLoader = new NodeLoaderMock(nodeUpdater.storage);
+        StoredNodeFactory<Bytes32> nodeFactory = new StoredNodeFactory<>(nodeLoader, value -> (Bytes32) value);
+        SimpleVerkleTrie<Bytes32, Bytes32> trie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        Bytes32 key1 = Bytes32.fromHexString("0x00112233445566778899aabbccddeeff00112233445566778899aabbccddeeff");
+        Bytes32 value1 = Bytes32.fromHexString("0x1000000000000000000000000000000000000000000000000000000000000000");
+        Bytes32 key2 = Bytes32.fromHexString("0x00ff112233445566778899aabbccddeeff00112233445566778899aabbccddee");
+        Bytes32 value2 = Bytes32.fromHexString("0x0200000000000000000000000000000000000000000000000000000000000000");
+        Bytes32 key3 = Bytes32.fromHexString("0x00ff112233445566778899aabbccddeeff00112233445566778899aabbccddff");
+        Bytes32 value3 = Bytes32.fromHexString("0x0300000000000000000000000000000000000000000000000000000000000000");
+        trie.put(key1, value1);
+        trie.put(key2, value2);
+        trie.put(key3, value3);
+        trie.commit(nodeUpdater);
+
+        Node<Bytes32> storedRoot = nodeFactory.retrieve(Bytes.EMPTY, null).get();
+        SimpleVerkleTrie<Bytes32, Bytes32> storedTrie = new SimpleVerkleTrie<Bytes32, Bytes32>(storedRoot);
+        storedTrie.remove(key1);
+        trie.remove(key1);
+        assertThat(storedTrie.getRoot().getPath()).as("Flattened extension path").isEqualTo(trie.getRoot().getPath());
+        assertThat(storedTrie.getRootHash()).isEqualTo(trie.getRootHash());
+        assertThat(storedTrie.get(key2).orElse(null)).isEqualTo(value2);
+        assertThat(storedTrie.get(key3).orElse(null)).isEqualTo(value3);
+    }
+
+    @Test
+    public void testRemoveMissingKeyFromStoredTrie() throws Exception {
+        NodeUpdaterMock nodeUpdater = new NodeUpdaterMock();
+        NodeLoaderMock nodeLoader = new NodeLoaderMock(nodeUpdater.storage);
+        StoredNodeFactory<Bytes32> nodeFactory = new StoredNodeFactory<>(nodeLoader, value -> (Bytes32) value);
+        SimpleVerkleTrie<Bytes32, Bytes32> trie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        Bytes32 key1 = Bytes32.fromHexString("0x00112233445566778899aabbccddeeff00112233445566778899aabbccddeeff");
+        Bytes32 value1 = Bytes32.fromHexString("0x1000000000000000000000000000000000000000000000000000000000000000");
+        Bytes32 key2 = Bytes32.fromHexString("0xff112233445566778899aabbccddeeff00112233445566778899aabbccddee00");
+        Bytes32 value2 = Bytes32.fromHexString("0x0100000000000000000000000000000000000000000000000000000000000000");
+        Bytes32 missingKey = Bytes32.fromHexString("0x00112233445566778899aabbccddeeff00112233445566778899aabbccddee00");
+        trie.put(key1, value1);
+        trie.put(key2, value2);
+        trie.commit(nodeUpdater);
+
+        Node<Bytes32> storedRoot = nodeFactory.retrieve(Bytes.EMPTY, null).get();
+        SimpleVerkleTrie<Bytes32, Bytes32> storedTrie = new SimpleVerkleTrie<Bytes32, Bytes32>(storedRoot);
+        storedTrie.remove(missingKey);
+        NodeUpdaterMock secondUpdater = new NodeUpdaterMock();
+        storedTrie.commit(secondUpdater);
+        assertThat(secondUpdater.storage).as("No node is stored").isEmpty();
+        assertThat(storedTrie.getRootHash()).isEqualTo(trie.getRootHash());
+    }
+
+    @Test
+    public void testMissingStoredChild() throws Exception {
+        NodeUpdaterMock nodeUpdater = new NodeUpdaterMock();
+        NodeLoaderMock nodeLoader = new NodeLoaderMock(nodeUpdater.storage);
+        StoredNodeFactory<Bytes32> nodeFactory = new StoredNodeFactory<>(nodeLoader, value -> (Bytes32) value);
+        SimpleVerkleTrie<Bytes32, Bytes32> trie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        Bytes32 key1 = Bytes32.fromHexString("0x00112233445566778899aabbccddeeff00112233445566778899aabbccddeeff");
+        Bytes32 value1 = Bytes32.fromHexString("0x1000000000000000000000000000000000000000000000000000000000000000");
+        Bytes32 key2 = Bytes32.fromHexString("0xff112233445566778899aabbccddeeff00112233445566778899aabbccddee00");
+        Bytes32 value2 = Bytes32.fromHexString("0x0100000000000000000000000000000000000000000000000000000000000000");
+        trie.put(key1, value1);
+        trie.put(key2, value2);
+        trie.commit(nodeUpdater);
+        nodeUpdater.storage.remove(Bytes.of(0xff));
+
+        Node<Bytes32> storedRoot = nodeFactory.retrieve(Bytes.EMPTY, null).get();
+        SimpleVerkleTrie<Bytes32, Bytes32> storedTrie = new SimpleVerkleTrie<Bytes32, Bytes32>(storedRoot);
+        assertThat(storedTrie.get(key1)).contains(value1);
+        assertThatThrownBy(() -> storedTrie.get(key2)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void testRemovedNodesAreDeleted() throws Exception {
+        NodeUpdaterMock nodeUpdater = new NodeUpdaterMock();
+        NodeLoaderMock nodeLoader = new NodeLoaderMock(nodeUpdater.storage);
+        StoredNodeFactory<Bytes32> nodeFactory = new StoredNodeFactory<>(nodeLoader, value -> (Bytes32) value);
+        SimpleVerkleTrie<Bytes32, Bytes32> trie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        Bytes32 key1 = Bytes32.fromHexString("0x00112233445566778899aabbccddeeff00112233445566778899aabbccddeeff");
+        Bytes32 key2 = Bytes32.fromHexString("0x00ff112233445566778899aabbccddeeff00112233445566778899aabbccddee");
+        Bytes32 key3 = Bytes32.fromHexString("0x00ff112233445566778899aabbccddeeff00112233445566778899aabbccddff");
+        Bytes32 key4 = Bytes32.fromHexString("0xff112233445566778899aabbccddeeff00112233445566778899aabbccddeeff");
+        Bytes32 value = Bytes32.fromHexString("0x1000000000000000000000000000000000000000000000000000000000000000");
+        trie.put(key1, value);
+        trie.put(key2, value);
+        trie.put(key3, value);
+        trie.put(key4, value);
+        trie.commit(nodeUpdater);
+
+        // The stem moves up to the location of the flattened branch
+        SimpleVerkleTrie<Bytes32, Bytes32> storedTrie =
+            new SimpleVerkleTrie<Bytes32, Bytes32>(nodeFactory.retrieve(Bytes.EMPTY, null).get());
+        storedTrie.remove(key1);
+        storedTrie.commit(nodeUpdater);
+        NodeUpdaterMock expectedUpdater = new NodeUpdaterMock();
+        SimpleVerkleTrie<Bytes32, Bytes32> expectedTrie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        expectedTrie.put(key2, value);
+        expectedTrie.put(key3, value);
+        expectedTrie.put(key4, value);
+        expectedTrie.commit(expectedUpdater);
+        assertThat(nodeUpdater.storage).isEqualTo(expectedUpdater.storage);
+
+        // The emptied stem and the flattened root
+        TreeMap<Bytes32, Optional<Bytes32>> removals = new TreeMap<>();
+        removals.put(key2, Optional.empty());
+        removals.put(key3, Optional.empty());
+        storedTrie.putAll(removals);
+        storedTrie.commit(nodeUpdater);
+        expectedUpdater = new NodeUpdaterMock();
+        expectedTrie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        expectedTrie.put(key4, value);
+        expectedTrie.commit(expectedUpdater);
+        assertThat(nodeUpdater.storage).isEqualTo(expectedUpdater.storage);
+
+        storedTrie.remove(key4);
+        storedTrie.commit(nodeUpdater);
+        assertThat(nodeUpdater.storage).isEmpty();
+    }
+
+    @Test
+    public void testUpdateStoredStem() throws Exception {
+        NodeUpdaterMock nodeUpdater = new NodeUpdaterMock();
+        NodeLoaderMock nodeLoader = new NodeLoaderMock(nodeUpdater.storage);
+        StoredNodeFactory<Bytes32> nodeFactory = new StoredNodeFactory<>(nodeLoader, value -> (Bytes32) value);
+        SimpleVerkleTrie<Bytes32, Bytes32> trie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        Bytes32 key1 = Bytes32.fromHexString("0x00112233445566778899aabbccddeeff00112233445566778899aabbccddeeff");
+        Bytes32 value1 = Bytes32.fromHexString("0x1000000000000000000000000000000000000000000000000000000000000000");
+        Bytes32 key2 = Bytes32.fromHexString("0x00ff112233445566778899aabbccddeeff00112233445566778899aabbccddee");
+        Bytes32 value2 = Bytes32.fromHexString("0x0200000000000000000000000000000000000000000000000000000000000000");
+        Bytes32 key3 = Bytes32.fromHexString("0x00ff112233445566778899aabbccddeeff00112233445566778899aabbccddff");
+        Bytes32 value3 = Bytes32.fromHexString("0x0300000000000000000000000000000000000000000000000000000000000000");
+        Bytes32 key4 = Bytes32.fromHexString("0x00ff112233445566778899aabbccddeeff00112233445566778899aabbccdd01");
+        trie.put(key1, value1);
+        trie.put(key2, value2);
+        trie.put(key3, value3);
+        trie.put(key4, value1);
+        trie.commit(nodeUpdater);
+
+        Node<Bytes32> storedRoot = nodeFactory.retrieve(Bytes.EMPTY, null).get();
+        SimpleVerkleTrie<Bytes32, Bytes32> storedTrie = new SimpleVerkleTrie<Bytes32, Bytes32>(storedRoot);
+        assertThat(storedTrie.get(key4)).as("Value loaded with its stem").isEqualTo(Optional.of(value1));
+        storedTrie.put(key3, value2);
+        storedTrie.remove(key4);
+        SimpleVerkleTrie<Bytes32, Bytes32> expectedTrie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        expectedTrie.put(key1, value1);
+        expectedTrie.put(key2, value2);
+        expectedTrie.put(key3, value2);
+        assertThat(storedTrie.getRootHash()).as("Updated stored stem").isEqualTo(expectedTrie.getRootHash());
+        storedTrie.remove(key3);
+        expectedTrie.remove(key3);
+        assertThat(storedTrie.getRoot().getChildren().get(0xff)).as("One value left is a LeafNode").isInstanceOf(LeafNode.class);
+        assertThat(storedTrie.getRootHash()).as("Stem back to a single value").isEqualTo(expectedTrie.getRootHash());
+    }
+
+    @Test
+    public void testNestedCommitsWithSharedHashVisitor() throws Exception {
+        Bytes32 key1 = Bytes32.fromHexString("0x00112233445566778899aabbccddeeff00112233445566778899aabbccddeeff");
+        Bytes32 key2 = Bytes32.fromHexString("0xff112233445566778899aabbccddeeff00112233445566778899aabbccddee00");
+        Bytes32 value = Bytes32.fromHexString("0x1000000000000000000000000000000000000000000000000000000000000000");
+        HashVisitor<Bytes32> hashVisitor = new HashVisitor<Bytes32>();
+        SimpleVerkleTrie<Bytes32, Bytes32> trie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        trie.put(key1, value);
+        trie.put(key2, value);
+        SimpleVerkleTrie<Bytes32, Bytes32> otherTrie = new SimpleVerkleTrie<Bytes32, Bytes32>();
+        otherTrie.put(key1, value);
+        NodeUpdaterMock otherUpdater = new NodeUpdaterMock();
+        // Commits the other trie with the same visitor while the first commit is under way
+        NodeUpdaterMock nodeUpdater = new NodeUpdaterMock() {
+            @Override
+            public void store(Bytes location, Bytes32 hash, Bytes value) {
+                if (otherUpdater.storage.isEmpty()) {
+                    hashVisitor.commit(otherTrie.getRoot(), Bytes.EMPTY, otherUpdater);
+                }
+                super.store(location, hash, value);
+            }
+        };
+        hashVisitor.commit(trie.getRoot(), Bytes.EMPTY, nodeUpdater);
+        assertThat(nodeUpdater.storage.keySet()).containsExactlyInAnyOrder(Bytes.EMPTY, Bytes.of(0x00), Bytes.of(0xff));
+        assertThat(otherUpdater.storage.keySet()).containsExactly(Bytes.EMPTY);
+    }
 }
@@ -1,5 +1,7 @@
 package org.hyperledger.besu.ethereum.trie.verkle;
 
+import java.util.List;
+
 import org.junit.jupiter.api.Test;
 import static org.assertj.core.api.Assertions.*;
 
@@ -60,4 +62,42 @@ public class TrieKeyAdapterTest {
         Bytes32 expected = Bytes32.fromHexString("0xc3552556138109254d3fb498d2364e85ed427986e389dff3fa5a514e2a3e5404");
         assertThat(adapter.codeSizeKey(address)).isEqualTo(expected);
     }
+
+    @Test
+    public void testHeaderKeys() {
+        assertThat(adapter.headerKeys(address)).containsExactly(
+            adapter.versionKey(address),
+            adapter.balanceKey(address),
+            adapter.nonceKey(address),
+            adapter.codeKeccakKey(address),
+            adapter.codeSizeKey(address));
+    }
+
+    @Test
+    public void testStems() {
+        Bytes32 otherAddress = Bytes32.fromHexString("0x00000000000000000000000000112233445566778899aabbccddeeff001122");
+        TrieKeyAdapter uncachedAdapter = new TrieKeyAdapter(new SHA256Hasher(), 0);
+        List<Bytes32> addresses = List.of(address, otherAddress, address);
+        List<UInt256> treeIndices = List.of(UInt256.valueOf(0), UInt256.valueOf(1), UInt256.valueOf(2));
+        List<Bytes32> stems = adapter.stems(addresses, treeIndices);
+        for (int i = 0; i < addresses.size(); i++) {
+            assertThat(stems.get(i)).isEqualTo(uncachedAdapter.baseKey(addresses.get(i), treeIndices.get(i)));
+        }
+        assertThat(stems.get(0).slice(0, 31)).isEqualTo(adapter.versionKey(address).slice(0, 31));
+        assertThat(adapter.stems(addresses, treeIndices)).as("Cached stems").isEqualTo(stems);
+    }
+
+    @Test
+    public void testDerivedKeys() {
+        IPAHasher hasher = new IPAHasher();
+        TrieKeyAdapter ipaAdapter = new TrieKeyAdapter(hasher, 0);
+        List<Bytes32> addresses = List.of(address, address);
+        List<UInt256> treeIndices = List.of(UInt256.valueOf(0), UInt256.MAX_VALUE.divide(3));
+        List<Bytes32> stems = ipaAdapter.stems(addresses, treeIndices);
+        for (int i = 0; i < addresses.size(); i++) {
+            Bytes32 committed = hasher.commit(ipaAdapter.baseKeyInput(addresses.get(i), treeIndices.get(i)));
+            assertThat(stems.get(i)).isEqualTo(committed);
+            assertThat(ipaAdapter.baseKey(addresses.get(i), treeIndices.get(i))).isEqualTo(committed);
+        }
+    }
 }
@@ -58,6 +58,60 @@ public class LibIpaMultipointTest {
         assertThat(result).isEqualTo(expected);
     }
 
+    @Test
+    public void testCallLibraryCommitMany() {
+        Bytes32 single = Bytes32.fromHexString("0x0cfe0000");
+        Bytes32 element = Bytes32.fromHexString("0x0cfe3041fb6512c87922e2146c8308b372f3bf967f889e69ad116ce7c7ec00");
+        Bytes32[] arr = new Bytes32[128];
+        for (int i = 0; i < 128; i++) {
+            arr[i] = element;
+        }
+        Bytes many = Bytes.concatenate(arr);
+        Bytes input = Bytes.concatenate(single, many, single);
+        int[] offsets = {0, 32, 32 + many.size()};
+        Bytes result = Bytes.wrap(LibIpaMultipoint.commitMany(input.toArray(), offsets));
+        Bytes32 expectedSingle = Bytes32.fromHexString("0x11169fb6b9dab0b5984ce0b02c9f2c9a3a5adf6f9a95b597bca42ac2a8d8e89f");
+        Bytes32 expectedMany = Bytes32.fromHexString("0x1b8a1c8c25323f9a58d9221b521f9618e78bb253866de6a3d1c16398678dfa26");
+        assertThat(result).isEqualTo(Bytes.concatenate(expectedSingle, expectedMany, expectedSingle));
+    }
+
+    @Test
+    public void testCallLibraryCommitRootMany() {
+        Bytes32 single = Bytes32.fromHexString("0x0cfe0000");
+        Bytes32 other = Bytes32.fromHexString("0xd36f20567f74f607d9252186ff8efed04de4578d1ddb3de4fe6c5e4249e0045b");
+        Bytes input = Bytes.concatenate(single, other, other);
+        int[] offsets = {0, 32};
+        Bytes result = Bytes.wrap(LibIpaMultipoint.commitRootMany(input.toArray(), offsets));
+        Bytes expected = Bytes.concatenate(
+            Bytes.wrap(LibIpaMultipoint.commit_root(single.toArray())),
+            Bytes.wrap(LibIpaMultipoint.commit_root(Bytes.concatenate(other, other).toArray())));
+        assertThat(result).isEqualTo(expected);
+        Bytes scalars = Bytes.wrap(LibIpaMultipoint.groupToFieldMany(result.toArray()));
+        assertThat(scalars.slice(0, 32)).isEqualTo(Bytes32.fromHexString("0x11169fb6b9dab0b5984ce0b02c9f2c9a3a5adf6f9a95b597bca42ac2a8d8e89f"));
+    }
+
+    @Test
+    public void testCallLibraryCommitSparse() {
+        Bytes32 input = Bytes32.fromHexString("0x0cfe0000");
+        Bytes32 result = Bytes32.wrap(LibIpaMultipoint.commitSparse(new byte[] {0}, input.toArray()));
+        Bytes32 expected = Bytes32.fromHexString("0x11169fb6b9dab0b5984ce0b02c9f2c9a3a5adf6f9a95b597bca42ac2a8d8e89f");
+        assertThat(result).isEqualTo(expected);
+
+        Bytes32 element = Bytes32.fromHexString("0xd36f20567f74f607d9252186ff8efed04de4578d1ddb3de4fe6c5e4249e0045b");
+        Bytes32[] arr = new Bytes32[256];
+        for (int i = 0; i < 256; i++) {
+            arr[i] = Bytes32.ZERO;
+        }
+        arr[3] = element;
+        arr[255] = input;
+        Bytes32 dense = Bytes32.wrap(LibIpaMultipoint.commit(Bytes.concatenate(arr).toArray()));
+        Bytes32 sparse = Bytes32.wrap(LibIpaMultipoint.commitSparse(new byte[] {(byte) 255, 3}, Bytes.concatenate(input, element).toArray()));
+        assertThat(sparse).isEqualTo(dense);
+        Bytes sparseMany = Bytes.wrap(LibIpaMultipoint.commitSparseMany(
+            new byte[] {0, (byte) 255, 3}, Bytes.concatenate(input, input, element).toArray(), new int[] {0, 1}));
+        assertThat(sparseMany).isEqualTo(Bytes.concatenate(expected, dense));
+    }
+
     @Test
     public void testCallLibraryPedersenHash() {
         // Example of passing address and trieIndex to pedersenHash.